@@ -0,0 +1,82 @@
+package com.email.email.writer.benchmark;
+
+import java.util.Random;
+
+/**
+ * Email bodies used by the benchmarks. Generated from a fixed seed so every run sees the same text.
+ */
+public enum BenchmarkCorpus {
+
+    /** A typical one-paragraph email with a couple of contact details. */
+    SHORT {
+        @Override
+        public String text() {
+            return "Hi team, I will be out of office tomorrow due to a doctor's appointment. "
+                    + "Please contact Sarah at sarah.jones@gmail.com or 9876543210 for any urgent matters.\n"
+                    + "Thanks,\nRavi";
+        }
+    },
+
+    /** A long forwarded thread (~50 KB) with PII sprinkled in at a realistic rate. */
+    THREAD_50KB {
+        @Override
+        public String text() {
+            return build(50_000, 0.02);
+        }
+    },
+
+    /** A pasted thread of ~1 MB, the size the chunked masking path is for. */
+    THREAD_1MB {
+        @Override
+        public String text() {
+            return build(1_000_000, 0.02);
+        }
+    },
+
+    /** Mostly sensitive values: card numbers, phones, PANs, dates and addresses. */
+    PII_DENSE {
+        @Override
+        public String text() {
+            return build(10_000, 0.5);
+        }
+    },
+
+    /** Plain prose without anything to mask. */
+    PII_FREE {
+        @Override
+        public String text() {
+            return build(10_000, 0.0);
+        }
+    };
+
+    private static final String[] WORDS = {
+            "regarding", "the", "invoice", "meeting", "schedule", "please", "confirm", "shipment",
+            "update", "tomorrow", "quarterly", "report", "thanks", "attached", "review", "customer"
+    };
+
+    private static final String[] PII = {
+            "priya.sharma@gmail.com", "4111 1111 1111 1111", "123456789012", "ABCDE1234F",
+            "password: s3cret!", "01/02/1990", "+91 9876543210", "9123456789"
+    };
+
+    public abstract String text();
+
+    private static String build(int length, double piiRatio) {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder(length + 64);
+        int line = 0;
+        while (sb.length() < length) {
+            if (random.nextDouble() < piiRatio) {
+                sb.append(PII[random.nextInt(PII.length)]);
+            } else {
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (++line % 12 == 0) {
+                sb.append(random.nextInt(4) == 0 ? "\n> " : "\n");
+            } else {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.email.email.writer.benchmark;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.email.email.writer.jwt.JwtUtils;
+import com.email.email.writer.model.User;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * What AuthTokenFilter does with the bearer token on every authenticated request, with and
+ * without the verified-token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    // The cache is disabled here so every call pays for a full parse and HMAC check
+    private JwtUtils jwtUtils;
+    private JwtUtils cachingJwtUtils;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret",
+                Base64.getEncoder().encodeToString("benchmark-secret-benchmark-secret-benchmark".getBytes()));
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 3_600_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheSize", 0);
+        jwtUtils.init();
+        token = jwtUtils.generateTokenFromUsername(new User("benchmark", "ignored"));
+
+        cachingJwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(cachingJwtUtils, "jwtSecret", ReflectionTestUtils.getField(jwtUtils, "jwtSecret"));
+        cachingJwtUtils.init();
+    }
+
+    @Benchmark
+    public String verifyUncached() {
+        Claims claims = jwtUtils.parseVerifiedClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    @Benchmark
+    public String verifyCached() {
+        Claims claims = cachingJwtUtils.parseVerifiedClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+}
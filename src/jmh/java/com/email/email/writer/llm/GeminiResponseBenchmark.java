@@ -0,0 +1,72 @@
+package com.email.email.writer.llm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.email.email.writer.benchmark.BenchmarkCorpus;
+import com.email.email.writer.service.DataMaskingService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Gemini response parsing: the streaming codec against reading the whole body into a JsonNode tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeminiResponseBenchmark {
+
+    // Roughly what a network read hands over at a time
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param({ "SHORT", "THREAD_50KB" })
+    private BenchmarkCorpus corpus;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] geminiResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        String maskedText = new DataMaskingService().mask(corpus.text()).maskedText();
+        // A reply of about the same size as the email, in Gemini's response shape
+        geminiResponse = mapper.writeValueAsBytes(Map.of(
+                "candidates", List.of(Map.of(
+                        "content", Map.of("parts", List.of(Map.of("text", maskedText)), "role", "model"),
+                        "finishReason", "STOP")),
+                "usageMetadata", Map.of("promptTokenCount", 120, "candidatesTokenCount", 80)));
+    }
+
+    @Benchmark
+    public LlmResponse codec() {
+        GeminiCodec.ResponseDecoder decoder = new GeminiCodec.ResponseDecoder();
+        for (int from = 0; from < geminiResponse.length; from += BUFFER_SIZE) {
+            decoder.feed(ByteBuffer.wrap(geminiResponse, from, Math.min(BUFFER_SIZE, geminiResponse.length - from)));
+        }
+        return decoder.finish();
+    }
+
+    // The previous approach: the body as one String, parsed into a tree
+    @Benchmark
+    public String tree() throws Exception {
+        JsonNode root = mapper.readTree(new String(geminiResponse, StandardCharsets.UTF_8));
+        return root.path("candidates").get(0).path("content").path("parts").get(0).path("text").asText();
+    }
+}
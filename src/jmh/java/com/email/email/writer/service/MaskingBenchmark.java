@@ -0,0 +1,69 @@
+package com.email.email.writer.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.email.email.writer.benchmark.BenchmarkCorpus;
+import com.email.email.writer.masking.PiiScanner;
+
+/**
+ * DataMaskingService.mask and unmask. The unmask input is the masked email itself, which is
+ * roughly what a reply that quotes the original looks like. maskChunked uses the fork-join path
+ * with the default threshold and chunk size; below the threshold it is the same as mask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaskingBenchmark {
+
+    @Param({ "SHORT", "THREAD_50KB", "THREAD_1MB", "PII_DENSE", "PII_FREE" })
+    private BenchmarkCorpus corpus;
+
+    private DataMaskingService maskingService;
+    private DataMaskingService chunkedMaskingService;
+    private String text;
+    private MaskedData masked;
+
+    @Setup
+    public void setUp() {
+        maskingService = new DataMaskingService();
+        chunkedMaskingService = new DataMaskingService(PiiScanner.builtInDetectors(), 131072, 32768, 0);
+        text = corpus.text();
+        masked = maskingService.mask(text);
+    }
+
+    @Benchmark
+    public MaskedData mask() {
+        return maskingService.mask(text);
+    }
+
+    @TearDown
+    public void tearDown() {
+        chunkedMaskingService.close();
+    }
+
+    @Benchmark
+    public MaskedData maskChunked() {
+        return chunkedMaskingService.mask(text);
+    }
+
+    @Benchmark
+    public String unmask() {
+        return maskingService.unmask(masked.maskedText(), masked.replacements());
+    }
+}
@@ -0,0 +1,63 @@
+package com.email.email.writer.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.email.email.writer.benchmark.BenchmarkCorpus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Prompt preparation (thread trimming, and the token budget on the masked text) and construction in PromptBuilder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBenchmark {
+
+    @Param({ "SHORT", "THREAD_50KB" })
+    private BenchmarkCorpus corpus;
+
+    private PromptBuilder promptBuilder;
+    private String text;
+    private MaskedData masked;
+    private String maskedText;
+
+    @Setup
+    public void setUp() {
+        promptBuilder = new PromptBuilder(4000, 4, List.of("formal"), new SimpleMeterRegistry());
+        text = corpus.text();
+        masked = new DataMaskingService().mask(promptBuilder.prepare(text));
+        maskedText = promptBuilder.fitToBudget(text, masked).maskedText();
+    }
+
+    @Benchmark
+    public String prepare() {
+        return promptBuilder.prepare(text);
+    }
+
+    @Benchmark
+    public MaskedData fitToBudget() {
+        return promptBuilder.fitToBudget(text, masked);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return promptBuilder.build(maskedText, "formal");
+    }
+}
@@ -0,0 +1,69 @@
+package com.email.email.writer.controller;
+
+import com.email.email.writer.service.UserImportService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+// Operator endpoints. Only the usernames listed in app.admin.usernames may call them.
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final String TEXT_CSV = "text/csv";
+
+    private final UserImportService userImportService;
+    private final Set<String> adminUsernames;
+
+    public AdminController(UserImportService userImportService,
+                           @Value("${app.admin.usernames:}") Set<String> adminUsernames) {
+        this.userImportService = userImportService;
+        this.adminUsernames = adminUsernames;
+    }
+
+    // The body is read as a stream, so a large user list is never held in memory as a whole
+    @PostMapping(value = "/users/import", consumes = TEXT_CSV, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importUsersCsv(InputStream body) throws IOException {
+        if (!isAdmin()) {
+            return forbidden();
+        }
+        try {
+            return ResponseEntity.ok(userImportService.importCsv(body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/users/import", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importUsersJson(InputStream body) throws IOException {
+        if (!isAdmin()) {
+            return forbidden();
+        }
+        try {
+            return ResponseEntity.ok(userImportService.importJson(body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    private boolean isAdmin() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && adminUsernames.contains(auth.getName());
+    }
+
+    private static ResponseEntity<String> forbidden() {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Admins only.");
+    }
+}
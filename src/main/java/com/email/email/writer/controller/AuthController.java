@@ -3,6 +3,7 @@ package com.email.email.writer.controller;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -21,12 +22,10 @@ import com.email.email.writer.dto.LoginRequest;
 import com.email.email.writer.dto.LoginResponse;
 import com.email.email.writer.jwt.JwtUtils;
 import com.email.email.writer.model.User;
+import com.email.email.writer.service.PasswordHashingOverloadedException;
 import com.email.email.writer.service.RateLimiterService;
 import com.email.email.writer.service.UserService;
 
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
-
 //import com.example.Securitydemo.jwt.LoginResponse;
 
 
@@ -57,6 +56,8 @@ public class AuthController {
             return ResponseEntity.ok("User registered successfully");
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (PasswordHashingOverloadedException e) {
+            return busy(e);
         }
     }
 
@@ -65,30 +66,39 @@ public class AuthController {
         String username = loginRequest.getUsername();
 
         // Per-user limiter (10 logins/day)
-        RateLimiter limiter = rateLimiterService.getLoginLimiter(username);
+        if (!rateLimiterService.tryAcquireLogin(username)) {
+            return ResponseEntity.status(429).body("Login limit exceeded. Max 10 logins per day.");
+        }
 
         try {
-            return RateLimiter.decorateSupplier(limiter, () -> {
-                try {
-                    Authentication authentication = authenticationManager.authenticate(
-                            new UsernamePasswordAuthenticationToken(username, loginRequest.getPassword())
-                    );
-
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                    UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-                    String jwtToken = jwtUtils.generateTokenFromUsername(userDetails);
-
-                    LoginResponse response = new LoginResponse(jwtToken, userDetails.getUsername());
-                    return ResponseEntity.ok(response);
-                } catch (AuthenticationException e) {
-                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
-                            Map.of("message", "Invalid credentials", "status", false)
-                    );
-                }
-            }).get();
-        } catch (RequestNotPermitted ex) {
-            return ResponseEntity.status(429).body("Login limit exceeded. Max 10 logins per day.");
+            Authentication authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(username, loginRequest.getPassword())
+            );
+
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+            String jwtToken = jwtUtils.generateTokenFromUsername(userDetails);
+
+            LoginResponse response = new LoginResponse(jwtToken, userDetails.getUsername());
+            return ResponseEntity.ok(response);
+        } catch (PasswordHashingOverloadedException e) {
+            return busy(e);
+        } catch (AuthenticationException e) {
+            // For unknown users the provider wraps our exception in an InternalAuthenticationServiceException
+            if (e.getCause() instanceof PasswordHashingOverloadedException overloaded) {
+                return busy(overloaded);
+            }
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    Map.of("message", "Invalid credentials", "status", false)
+            );
         }
     }
 
+    // Too many password hashes queued: shed the request instead of tying up a request thread
+    private static ResponseEntity<String> busy(PasswordHashingOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfter().toSeconds()))
+                .body("Too many sign-ins right now. Please try again shortly.");
+    }
+
 }
@@ -1,17 +1,28 @@
 package com.email.email.writer.controller;
 
+import com.email.email.writer.dto.BatchReplyItem;
+import com.email.email.writer.llm.LlmContentBlockedException;
+import com.email.email.writer.llm.LlmOverloadedException;
+import com.email.email.writer.llm.LlmResponseException;
 import com.email.email.writer.model.EmailRequest;
 import com.email.email.writer.service.EmailGeneratorService;
+import com.email.email.writer.service.RateLimitExceededException;
 import com.email.email.writer.service.RateLimiterService;
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.function.Supplier;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/email")
@@ -19,29 +30,126 @@ import java.util.function.Supplier;
 @CrossOrigin(origins = "*")
 public class EmailGeneratorController {
 
+    // The Servlet API has no signal for a client that went away; a write to its closed connection fails,
+    // and Spring then cancels the stream, which also takes a call waiting for an LLM slot out of the queue
+    private static final Duration HEARTBEAT = Duration.ofSeconds(5);
+
     private final EmailGeneratorService emailGeneratorService;
     private final RateLimiterService rateLimiterService;
 
     @PostMapping("/generate")
-    public ResponseEntity<String> generateEmail(@RequestBody EmailRequest emailRequest) {
+    public Mono<ResponseEntity<String>> generateEmail(@RequestBody EmailRequest emailRequest) {
         // ✅ Get logged-in username from Spring Security context
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = auth != null ? auth.getName() : "anonymous";
-
-        // ✅ Get per-user limiter
-        RateLimiter limiter = rateLimiterService.getEmailLimiter(username);
-
-        // ✅ Wrap the service call inside rate limiter
-        Supplier<ResponseEntity<String>> restrictedCall =
-                RateLimiter.decorateSupplier(limiter, () -> {
-                    String response = emailGeneratorService.generateEmailReply(emailRequest);
-                    return ResponseEntity.ok(response);
-                });
-
-        try {
-            return restrictedCall.get();
-        } catch (RequestNotPermitted ex) {
-            return ResponseEntity.status(429).body("Too many requests. Please try again later.");
+        String username = currentUsername();
+
+        // ✅ Per-user limiter wraps the service call; the servlet thread is released while Gemini answers
+        return rateLimiterService.limitEmail(username, emailGeneratorService.generateEmailReply(emailRequest, username))
+                .map(ResponseEntity::ok)
+                .onErrorResume(RateLimitExceededException.class, ex ->
+                        Mono.just(ResponseEntity.status(429).body("Too many requests. Please try again later.")))
+                // Too many LLM calls in flight: shed load and tell the client when to come back
+                .onErrorResume(LlmOverloadedException.class, ex ->
+                        Mono.just(ResponseEntity.status(503)
+                                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfter().toSeconds()))
+                                .body("The AI service is busy. Please try again shortly.")))
+                // Circuit breaker open: upstream is unhealthy, so fail fast instead of waiting on it
+                .onErrorResume(CallNotPermittedException.class, ex ->
+                        Mono.just(ResponseEntity.status(503).body("The AI service is temporarily unavailable. Please try again shortly.")))
+                .onErrorResume(TimeoutException.class, ex ->
+                        Mono.just(ResponseEntity.status(504).body("The AI service took too long to answer. Please try again.")))
+                // The model refused this email (e.g. safety filters); retrying will not change that
+                .onErrorResume(LlmContentBlockedException.class, ex ->
+                        Mono.just(ResponseEntity.status(422).body("The AI service declined to reply to this email.")))
+                .onErrorResume(LlmResponseException.class, ex ->
+                        Mono.just(ResponseEntity.status(502).body("The AI service sent an unusable answer. Please try again.")));
+    }
+
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamEmail(@RequestBody EmailRequest emailRequest) {
+        String username = currentUsername();
+
+        // Same per-user budget as /generate: one stream counts as one generation
+        if (!rateLimiterService.tryAcquireEmail(username)) {
+            return ResponseEntity.status(429).body(Flux.just(
+                    ServerSentEvent.<String>builder("Too many requests. Please try again later.").event("error").build()));
+        }
+
+        return ResponseEntity.ok(withHeartbeat(emailGeneratorService.streamEmailReply(emailRequest, username)
+                .map(chunk -> ServerSentEvent.builder(chunk).build())
+                .concatWith(Flux.just(ServerSentEvent.<String>builder("").event("done").build()))
+                // The status is already sent once streaming starts, so failures are reported as error events
+                .onErrorResume(LlmOverloadedException.class, ex -> Flux.just(
+                        ServerSentEvent.<String>builder("The AI service is busy. Please try again shortly.")
+                                .event("error")
+                                .retry(ex.getRetryAfter())
+                                .build()))
+                // Same cases as the 503/504/502 of /generate
+                .onErrorResume(CallNotPermittedException.class, ex -> Flux.just(
+                        ServerSentEvent.<String>builder("The AI service is temporarily unavailable. Please try again shortly.")
+                                .event("error")
+                                .build()))
+                .onErrorResume(TimeoutException.class, ex -> Flux.just(
+                        ServerSentEvent.<String>builder("The AI service took too long to answer. Please try again.")
+                                .event("error")
+                                .build()))
+                .onErrorResume(LlmContentBlockedException.class, ex -> Flux.just(
+                        ServerSentEvent.<String>builder("The AI service declined to reply to this email.")
+                                .event("error")
+                                .build()))
+                .onErrorResume(LlmResponseException.class, ex -> Flux.just(
+                        ServerSentEvent.<String>builder("The AI service sent an unusable answer. Please try again.")
+                                .event("error")
+                                .build()))));
+    }
+
+    // Replies in request order once the whole batch is done
+    @PostMapping(value = "/generate/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<?>> generateBatch(@RequestBody List<EmailRequest> emailRequests) {
+        ResponseEntity<String> rejected = checkBatch(emailRequests);
+        if (rejected != null) {
+            return Mono.just(rejected);
+        }
+        return emailGeneratorService.generateBatch(emailRequests, true, currentUsername())
+                .collectList()
+                .<ResponseEntity<?>>map(ResponseEntity::ok);
+    }
+
+    // Same request body; each item is sent as an event as soon as it is done
+    @PostMapping(value = "/generate/batch/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> streamBatch(@RequestBody List<EmailRequest> emailRequests) {
+        ResponseEntity<String> rejected = checkBatch(emailRequests);
+        if (rejected != null) {
+            return ResponseEntity.status(rejected.getStatusCode()).body(Flux.just(
+                    ServerSentEvent.<Object>builder(rejected.getBody()).event("error").build()));
         }
+        Flux<BatchReplyItem> items = emailGeneratorService.generateBatch(emailRequests, false, currentUsername());
+        return ResponseEntity.ok(withHeartbeat(items
+                .map(item -> ServerSentEvent.<Object>builder(item).build())
+                .concatWith(Flux.just(ServerSentEvent.<Object>builder("").event("done").build()))));
+    }
+
+    // Adds a comment event every HEARTBEAT until the events end; EventSource clients ignore comments
+    private static <T> Flux<ServerSentEvent<T>> withHeartbeat(Flux<ServerSentEvent<T>> events) {
+        return events.publish(shared -> Flux.merge(shared, Flux.interval(HEARTBEAT)
+                .map(tick -> ServerSentEvent.<T>builder().comment("keep-alive").build())
+                .takeUntilOther(shared.ignoreElements())));
+    }
+
+    // Returns the error response for a batch that cannot run, or null after charging one permit per email
+    private ResponseEntity<String> checkBatch(List<EmailRequest> emailRequests) {
+        // A batch larger than the whole per-user quota could never be admitted, so it is a bad request
+        int maxItems = Math.min(emailGeneratorService.getBatchMaxItems(), rateLimiterService.getBatchEmailLimit());
+        if (emailRequests == null || emailRequests.isEmpty() || emailRequests.size() > maxItems) {
+            return ResponseEntity.badRequest().body("A batch must contain between 1 and " + maxItems + " emails.");
+        }
+        if (!rateLimiterService.tryAcquireBatch(currentUsername(), emailRequests.size())) {
+            return ResponseEntity.status(429).body("Too many requests. The batch does not fit in your remaining batch quota.");
+        }
+        return null;
+    }
+
+    private String currentUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null ? auth.getName() : "anonymous";
     }
 }
@@ -0,0 +1,81 @@
+package com.email.email.writer.controller;
+
+import com.email.email.writer.dto.HistoryPage;
+import com.email.email.writer.model.GenerationHistory;
+import com.email.email.writer.repo.GenerationHistoryRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+// The caller's own generation history. Entries show up here once the write-behind writer has flushed them.
+@RestController
+@RequestMapping("/api/history")
+@AllArgsConstructor
+@CrossOrigin(origins = "*")
+public class HistoryController {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final GenerationHistoryRepository historyRepository;
+
+    // Keyset paging: 'before' is the 'next' cursor of the previous page, so a deep page costs the same as the first
+    @GetMapping
+    public ResponseEntity<?> history(@RequestParam(required = false) String before,
+                                     @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        // One extra row says whether there is a next page
+        PageRequest limit = PageRequest.ofSize(pageSize + 1);
+        List<GenerationHistory> items;
+        if (before == null || before.isEmpty()) {
+            items = historyRepository.findByUsernameOrderByCreatedAtDescIdDesc(currentUsername(), limit);
+        }
+        else {
+            Cursor cursor = Cursor.decode(before);
+            if (cursor == null) {
+                return ResponseEntity.badRequest().body("Invalid 'before' cursor.");
+            }
+            items = historyRepository.findOlder(currentUsername(), cursor.createdAt(), cursor.id(), limit);
+        }
+        String next = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            GenerationHistory last = items.get(pageSize - 1);
+            next = new Cursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return ResponseEntity.ok(new HistoryPage(items, pageSize, next));
+    }
+
+    // The created_at and id of the last entry on a page, opaque to clients
+    record Cursor(Instant createdAt, long id) {
+
+        String encode() {
+            String key = createdAt + "," + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Null if the text was not made by encode()
+        static Cursor decode(String cursor) {
+            try {
+                String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int comma = key.indexOf(',');
+                return new Cursor(Instant.parse(key.substring(0, comma)), Long.parseLong(key.substring(comma + 1)));
+            }
+            catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    private String currentUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null ? auth.getName() : "anonymous";
+    }
+}
@@ -0,0 +1,28 @@
+package com.email.email.writer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// One entry of a /generate/batch response. index is the email's position in the request list;
+// exactly one of reply and error is set.
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchReplyItem {
+
+	private int index;
+
+	private String reply;
+
+	private String error;
+
+	public static BatchReplyItem success(int index, String reply) {
+		return new BatchReplyItem(index, reply, null);
+	}
+
+	public static BatchReplyItem failure(int index, String error) {
+		return new BatchReplyItem(index, null, error);
+	}
+}
@@ -0,0 +1,20 @@
+package com.email.email.writer.dto;
+
+import java.util.List;
+
+import com.email.email.writer.model.GenerationHistory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// One page of /api/history, newest first. next is the cursor for the following page, or null after the last one.
+@Data
+@AllArgsConstructor
+public class HistoryPage {
+
+	private List<GenerationHistory> items;
+
+	private int size;
+
+	private String next;
+}
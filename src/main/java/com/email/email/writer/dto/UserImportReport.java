@@ -0,0 +1,40 @@
+package com.email.email.writer.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Outcome of a bulk user import. row numbers count data rows from 1, without the CSV header.
+// Only the first errors are listed; failed always has the full count.
+@Data
+@NoArgsConstructor
+public class UserImportReport {
+
+	private int received;
+
+	private int imported;
+
+	private int failed;
+
+	private long durationMillis;
+
+	private double rowsPerSecond;
+
+	private List<RowError> errors = new ArrayList<>();
+
+	private boolean errorsTruncated;
+
+	@Data
+	@AllArgsConstructor
+	public static class RowError {
+
+		private int row;
+
+		private String username;
+
+		private String message;
+	}
+}
@@ -0,0 +1,18 @@
+package com.email.email.writer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One user in a bulk import, from a CSV line or a JSON array element
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportRow {
+
+	private String username;
+
+	private String email;
+
+	private String password;
+}
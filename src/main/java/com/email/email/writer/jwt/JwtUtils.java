@@ -1,7 +1,9 @@
 package com.email.email.writer.jwt;
 
-import java.security.Key;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import javax.crypto.SecretKey;
 
@@ -11,25 +13,63 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 
 @Component
 public class JwtUtils {
 
 	private static final Logger logger =LoggerFactory.getLogger(JwtUtils.class);
-	
+
+	// Don't sweep the verified-token cache more than once a second when it is full
+	private static final long SWEEP_INTERVAL_MS = 1000;
+
     @Value("${spring.app.jwtSecret}")
     private String jwtSecret;
 
     @Value("${spring.app.jwtExpirationMs}")
     private int jwtExpirationMs;
 
+    @Value("${spring.app.jwtVerifiedCacheSize:10000}")
+    private int verifiedCacheSize = 10000;
+
+    // Built once from the secret; both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Tokens whose signature was already checked, kept until their own exp
+    private final ConcurrentHashMap<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+    private final LongSupplier clock;
+
+    private record VerifiedToken(Claims claims, long expiresAtMillis) {}
+
+    public JwtUtils() {
+        this(System::currentTimeMillis);
+    }
+
+    JwtUtils(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .setClock(() -> new Date(clock.getAsLong()))
+                .build();
+    }
+
     public String getJwtFromHeader(HttpServletRequest request) {
     	String bearerToken=request.getHeader("Authorization");
     	logger.debug("Authorization Header : {}",bearerToken);
@@ -42,55 +82,93 @@ public class JwtUtils {
     // Generate JWT token
     public String generateTokenFromUsername(UserDetails userDetails) {
         String username=userDetails.getUsername();
+        long now = clock.getAsLong();
     	return Jwts.builder()
                 .setSubject(username)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key())
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + jwtExpirationMs))
+                .signWith(signingKey)
                 .compact();
     }
 
-    // Validate JWT token
+    /**
+     * Verifies the token once and returns its claims, or null if it is invalid or expired.
+     * Verified tokens are remembered until they expire, so repeat requests with the same
+     * token skip parsing and the HMAC check.
+     */
+    public Claims parseVerifiedClaims(String authToken) {
+        if (authToken == null || authToken.isEmpty()) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        VerifiedToken cached = verifiedTokens.get(authToken);
+        if (cached != null) {
+            if (cached.expiresAtMillis() > now) {
+                return cached.claims();
+            }
+            verifiedTokens.remove(authToken, cached);
+            logger.error("Expired JWT Token: expired at {}", new Date(cached.expiresAtMillis()));
+            return null;
+        }
 
-    // Extract username from JWT token
-    public String getUsernameFromJwtToken(String Token) {
-       return Jwts.parserBuilder()
-    		   .setSigningKey((SecretKey) key())
-    		   .build()
-    		   .parseClaimsJws(Token)
-    		   .getBody()
-    		   .getSubject();
-    }
-    
-    private Key key() {
-    	return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
-    }
-    
-    
-    public boolean validateJwtToken(String authToken) {
         try {
-            System.out.println("Validate");
-            
-            Jwts.parserBuilder()
-                .setSigningKey(key())  // key() should return a SecretKey
-                .build()
-                .parseClaimsJws(authToken);  // parses and validates the token
-            
-            return true;
-        } 
-        catch (SecurityException | MalformedJwtException e) {
+            Claims claims = parser.parseClaimsJws(authToken).getBody();
+            remember(authToken, claims, now);
+            return claims;
+        }
+        catch (MalformedJwtException e) {
             logger.error("Invalid JWT Token: {}", e.getMessage());
-        } 
+        }
         catch (ExpiredJwtException e) {
             logger.error("Expired JWT Token: {}", e.getMessage());
-        } 
+        }
         catch (UnsupportedJwtException e) {
             logger.error("Unsupported JWT Token: {}", e.getMessage());
-        } 
+        }
+        catch (JwtException e) {
+            logger.error("Invalid JWT Token: {}", e.getMessage());
+        }
         catch (IllegalArgumentException e) {
             logger.error("JWT Token string is empty: {}", e.getMessage());
         }
-        return false;
+        return null;
+    }
+
+    // Extract username from JWT token
+    public String getUsernameFromJwtToken(String Token) {
+        Claims claims = parseVerifiedClaims(Token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    // Validate JWT token
+    public boolean validateJwtToken(String authToken) {
+        return parseVerifiedClaims(authToken) != null;
+    }
+
+    // Tokens currently remembered as verified
+    int cachedTokens() {
+        return verifiedTokens.size();
+    }
+
+    private void remember(String token, Claims claims, long now) {
+        Date expiration = claims.getExpiration();
+        if (expiration == null) {
+            return; // we never issue tokens without exp, so don't keep one around forever
+        }
+        if (verifiedTokens.size() >= verifiedCacheSize) {
+            sweepExpired(now);
+            if (verifiedTokens.size() >= verifiedCacheSize) {
+                return;
+            }
+        }
+        verifiedTokens.put(token, new VerifiedToken(claims, expiration.getTime()));
+    }
+
+    private void sweepExpired(long now) {
+        long last = lastSweepMillis.get();
+        if (now - last < SWEEP_INTERVAL_MS || !lastSweepMillis.compareAndSet(last, now)) {
+            return;
+        }
+        verifiedTokens.values().removeIf(token -> token.expiresAtMillis() <= now);
     }
-    
 }
@@ -0,0 +1,381 @@
+package com.email.email.writer.llm;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Bounds how many LLM calls are in flight, with a limit that adapts to observed latency
+ * (the gradient algorithm from Netflix's concurrency-limits).
+ * <p>
+ * Two moving averages of call latency are kept: a long one (the baseline) and a short one (now).
+ * While the short one stays within {@code tolerance} times the baseline the limit grows by about
+ * its square root per call. When upstream slows down the ratio drops below 1 and the limit shrinks
+ * with it, and failed calls cut it by 10%. The limit only grows while traffic is actually using it.
+ * <p>
+ * Calls over the limit wait in a {@link FairQueue}: interactive calls are weighted over batch calls,
+ * and within each class users take turns, so one user's burst cannot hold everyone else back. Each
+ * class has its own queue bound and wait timeout. When the queue is full or the wait times out calls
+ * fail with {@link LlmOverloadedException}, which the controllers answer with 503 and Retry-After.
+ * Waiting holds no thread, so auth and health requests keep being served while the LLM path is
+ * saturated, and a caller that cancels (e.g. the client went away) leaves the queue at once.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_WINDOW = 600;
+    private static final double SHORT_WINDOW = 10;
+    private static final double SMOOTHING = 0.2;
+    private static final double DROP_FACTOR = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    // Per LlmCaller.Priority ordinal
+    private final int[] maxQueue;
+    private final Duration[] queueTimeout;
+
+    // Written under lock, read without it
+    private volatile double limit;
+    private double longRttNanos;
+    private volatile double shortRttNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final FairQueue<Waiter> queue;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final LongAdder rejected = new LongAdder();
+
+    // llm.scheduling.queue.wait{outcome=granted|timeout|cancelled}, per priority
+    private final Timer[] grantedWait;
+    private final Timer[] timedOutWait;
+    private final Timer[] cancelledWait;
+
+    // Batch calls get the interactive queue settings
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, int maxQueue,
+                               Duration queueTimeout, MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, tolerance, maxQueue, queueTimeout, maxQueue, queueTimeout, 4, 1,
+                1000, meterRegistry);
+    }
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(@Value("${llm.concurrency.initial-limit:20}") int initialLimit,
+                                      @Value("${llm.concurrency.min-limit:2}") int minLimit,
+                                      @Value("${llm.concurrency.max-limit:200}") int maxLimit,
+                                      @Value("${llm.concurrency.tolerance:1.5}") double tolerance,
+                                      @Value("${llm.concurrency.max-queue:50}") int maxQueue,
+                                      @Value("${llm.concurrency.queue-timeout:2s}") Duration queueTimeout,
+                                      @Value("${llm.scheduling.batch.max-queue:200}") int batchMaxQueue,
+                                      @Value("${llm.scheduling.batch.queue-timeout:30s}") Duration batchQueueTimeout,
+                                      @Value("${llm.scheduling.interactive.weight:4}") int interactiveWeight,
+                                      @Value("${llm.scheduling.batch.weight:1}") int batchWeight,
+                                      @Value("${llm.scheduling.quantum-tokens:1000}") int quantumTokens,
+                                      MeterRegistry meterRegistry) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.maxQueue = new int[] { maxQueue, batchMaxQueue };
+        this.queueTimeout = new Duration[] { queueTimeout, batchQueueTimeout };
+        this.queue = new FairQueue<>(Map.of(LlmCaller.Priority.INTERACTIVE, interactiveWeight,
+                LlmCaller.Priority.BATCH, batchWeight), quantumTokens);
+
+        Gauge.builder("llm.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent LLM calls")
+                .register(meterRegistry);
+        Gauge.builder("llm.concurrency.inflight", inFlight, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("llm.concurrency.queued", this, AdaptiveConcurrencyLimiter::getQueued).register(meterRegistry);
+        FunctionCounter.builder("llm.concurrency.rejected", rejected, LongAdder::sum)
+                .description("LLM calls shed because the queue was full or the wait timed out")
+                .register(meterRegistry);
+        this.grantedWait = queueWaitTimers("granted", meterRegistry);
+        this.timedOutWait = queueWaitTimers("timeout", meterRegistry);
+        this.cancelledWait = queueWaitTimers("cancelled", meterRegistry);
+    }
+
+    private static Timer[] queueWaitTimers(String outcome, MeterRegistry meterRegistry) {
+        LlmCaller.Priority[] priorities = LlmCaller.Priority.values();
+        Timer[] timers = new Timer[priorities.length];
+        for (LlmCaller.Priority priority : priorities) {
+            timers[priority.ordinal()] = queueWaitTimer(priority, outcome, meterRegistry);
+        }
+        return timers;
+    }
+
+    // Calls that got a slot at once are recorded as granted after no wait, so percentiles cover every call
+    private static Timer queueWaitTimer(LlmCaller.Priority priority, String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("llm.scheduling.queue.wait")
+                .description("Time an LLM call waited for a slot; outcome=timeout|cancelled are calls that gave up")
+                .tag("class", priority.name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> limit(Mono<T> call) {
+        return limit(LlmCaller.ANONYMOUS, call);
+    }
+
+    /**
+     * Runs {@code call} once a slot is free, queued as {@code caller} while there is none.
+     * Its latency feeds the limit.
+     */
+    public <T> Mono<T> limit(LlmCaller caller, Mono<T> call) {
+        return acquire(caller).flatMap(permit -> call
+                .doOnSuccess(value -> permit.release(true, false))
+                .doOnError(error -> permit.release(false, isDrop(error)))
+                .doOnCancel(() -> permit.release(false, false)));
+    }
+
+    /**
+     * Holds a slot for the whole stream. A stream's duration says little about upstream latency,
+     * so only its failures affect the limit.
+     */
+    public <T> Flux<T> limitStream(LlmCaller caller, Flux<T> call) {
+        return acquire(caller).flatMapMany(permit -> call
+                .doOnComplete(() -> permit.release(false, false))
+                .doOnError(error -> permit.release(false, isDrop(error)))
+                .doOnCancel(() -> permit.release(false, false)));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        queueLock.lock();
+        try {
+            return queue.size(LlmCaller.Priority.INTERACTIVE) + queue.size(LlmCaller.Priority.BATCH);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private Mono<Permit> acquire(LlmCaller caller) {
+        return Mono.defer(() -> {
+            int priority = caller.priority().ordinal();
+            if (tryReserve()) {
+                grantedWait[priority].record(Duration.ZERO);
+                return Mono.just(new Permit());
+            }
+            Waiter waiter = new Waiter(caller);
+            queueLock.lock();
+            try {
+                if (queue.size(caller.priority()) >= maxQueue[priority]) {
+                    return Mono.error(overloaded());
+                }
+                queue.add(caller, waiter);
+            } finally {
+                queueLock.unlock();
+            }
+            waiter.timeout = Schedulers.parallel().schedule(() -> {
+                if (waiter.abandon()) {
+                    waiter.recordWait(timedOutWait);
+                    waiter.sink.tryEmitError(overloaded());
+                }
+            }, queueTimeout[priority].toNanos(), TimeUnit.NANOSECONDS);
+            // A slot may have been freed between tryReserve and joining the queue
+            drain();
+            return waiter.sink.asMono().doOnCancel(waiter::cancel);
+        });
+    }
+
+    private boolean tryReserve() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Hands free slots to queued calls in the order the fair queue picks
+    private void drain() {
+        while (hasWaiters() && tryReserve()) {
+            Waiter waiter = nextWaiter();
+            if (waiter == null || !waiter.grant()) {
+                inFlight.decrementAndGet(); // nobody to hand it to
+            }
+        }
+    }
+
+    private boolean hasWaiters() {
+        queueLock.lock();
+        try {
+            return !queue.isEmpty();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private Waiter nextWaiter() {
+        queueLock.lock();
+        try {
+            return queue.poll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart) {
+        lock.lock();
+        try {
+            if (longRttNanos == 0) {
+                longRttNanos = rttNanos;
+                shortRttNanos = rttNanos;
+            }
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+            shortRttNanos += (rttNanos - shortRttNanos) / SHORT_WINDOW;
+            // After a lasting latency drop, let the baseline catch up quickly
+            if (longRttNanos / shortRttNanos > 2) {
+                longRttNanos *= 0.95;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            if (inFlightAtStart < limit / 2) {
+                newLimit = Math.min(newLimit, limit); // don't grow a limit the traffic isn't using
+            }
+            newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onDrop() {
+        lock.lock();
+        try {
+            limit = Math.max(minLimit, limit * DROP_FACTOR);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // An open breaker, a rejected request or a refused prompt says nothing about upstream capacity
+    private static boolean isDrop(Throwable error) {
+        return !(error instanceof CallNotPermittedException) && !(error instanceof LlmOverloadedException)
+                && !(error instanceof LlmContentBlockedException);
+    }
+
+    private LlmOverloadedException overloaded() {
+        rejected.increment();
+        // About one call's duration, by which time slots will have turned over
+        double rttSeconds = shortRttNanos / 1e9;
+        long seconds = Math.max(1, Math.min(30, (long) Math.ceil(rttSeconds)));
+        return new LlmOverloadedException(Duration.ofSeconds(seconds));
+    }
+
+    private final class Permit {
+
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart = inFlight.get();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release(boolean sample, boolean drop) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            if (sample) {
+                onSample(System.nanoTime() - startNanos, inFlightAtStart);
+            } else if (drop) {
+                onDrop();
+            }
+            drain();
+        }
+    }
+
+    private final class Waiter {
+
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int ABANDONED = 2;
+
+        final LlmCaller caller;
+        final long enqueuedNanos = System.nanoTime();
+        final Sinks.One<Permit> sink = Sinks.one();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        volatile Disposable timeout;
+        volatile Permit permit;
+
+        Waiter(LlmCaller caller) {
+            this.caller = caller;
+        }
+
+        // Called with a slot already reserved; false if the caller gave up meanwhile
+        boolean grant() {
+            // Published before the state change, so cancel() always finds it once GRANTED
+            permit = new Permit();
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                permit = null;
+                return false;
+            }
+            recordWait(grantedWait);
+            Disposable timer = timeout;
+            if (timer != null) {
+                timer.dispose();
+            }
+            sink.tryEmitValue(permit);
+            return true;
+        }
+
+        boolean abandon() {
+            if (!state.compareAndSet(WAITING, ABANDONED)) {
+                return false;
+            }
+            queueLock.lock();
+            try {
+                queue.remove(caller, this);
+            } finally {
+                queueLock.unlock();
+            }
+            return true;
+        }
+
+        void recordWait(Timer[] timers) {
+            timers[caller.priority().ordinal()].record(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void cancel() {
+            if (abandon()) {
+                recordWait(cancelledWait);
+            } else {
+                Disposable timer = timeout;
+                if (timer != null) {
+                    timer.dispose();
+                }
+                Permit granted = permit;
+                if (granted != null) {
+                    granted.release(false, false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.email.email.writer.llm;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wait queue of the {@link AdaptiveConcurrencyLimiter}: weighted between priority classes and
+ * fair between users within a class.
+ * <ul>
+ * <li>Classes are picked by smooth weighted round robin among those with waiting calls: with
+ * weights 4 and 1 and both classes waiting, every fifth free slot goes to a batch call, so
+ * interactive calls go first without starving the batches.</li>
+ * <li>Within a class each user has their own FIFO queue, and users take turns by deficit round robin:
+ * each turn adds {@code quantum} to the user's credit and they go on while their next call's cost
+ * (prompt tokens) fits in it. A user with 50 queued calls gets no more turns than one with a
+ * single call, and a user with long emails gets fewer calls per turn.</li>
+ * </ul>
+ * Not thread-safe; the limiter guards it with a lock.
+ */
+final class FairQueue<E> {
+
+    private static final LlmCaller.Priority[] PRIORITIES = LlmCaller.Priority.values();
+
+    private final int quantum;
+    private final int[] weights = new int[PRIORITIES.length];
+    private final int[] currentWeights = new int[PRIORITIES.length];
+    private final ClassQueue<E>[] classes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    FairQueue(Map<LlmCaller.Priority, Integer> weights, int quantum) {
+        this.quantum = Math.max(1, quantum);
+        this.classes = new ClassQueue[PRIORITIES.length];
+        for (LlmCaller.Priority priority : PRIORITIES) {
+            this.weights[priority.ordinal()] = Math.max(1, weights.getOrDefault(priority, 1));
+            this.classes[priority.ordinal()] = new ClassQueue<>();
+        }
+    }
+
+    void add(LlmCaller caller, E element) {
+        classes[caller.priority().ordinal()].add(caller, element);
+    }
+
+    /**
+     * Removes a call that gave up waiting; false if it was no longer queued.
+     */
+    boolean remove(LlmCaller caller, E element) {
+        return classes[caller.priority().ordinal()].remove(caller.user(), element);
+    }
+
+    /**
+     * The call to run next, or null if none is waiting.
+     */
+    E poll() {
+        int total = 0;
+        int picked = -1;
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].size == 0) {
+                currentWeights[i] = 0; // no credit for time spent idle
+                continue;
+            }
+            currentWeights[i] += weights[i];
+            total += weights[i];
+            if (picked < 0 || currentWeights[i] > currentWeights[picked]) {
+                picked = i;
+            }
+        }
+        if (picked < 0) {
+            return null;
+        }
+        currentWeights[picked] -= total;
+        return classes[picked].poll(quantum);
+    }
+
+    int size(LlmCaller.Priority priority) {
+        return classes[priority.ordinal()].size;
+    }
+
+    boolean isEmpty() {
+        for (ClassQueue<E> queue : classes) {
+            if (queue.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Entry<E>(E element, int cost) {
+    }
+
+    private static final class UserQueue<E> {
+
+        final String user;
+        final ArrayDeque<Entry<E>> entries = new ArrayDeque<>();
+        long deficit;
+        // Whether this turn's quantum was already added
+        boolean credited;
+
+        UserQueue(String user) {
+            this.user = user;
+        }
+    }
+
+    private static final class ClassQueue<E> {
+
+        private final Map<String, UserQueue<E>> users = new HashMap<>();
+        // Users with waiting calls, the one whose turn it is first
+        private final ArrayDeque<UserQueue<E>> turns = new ArrayDeque<>();
+        int size;
+
+        void add(LlmCaller caller, E element) {
+            UserQueue<E> queue = users.computeIfAbsent(caller.user(), UserQueue::new);
+            if (queue.entries.isEmpty()) {
+                turns.addLast(queue);
+            }
+            queue.entries.addLast(new Entry<>(element, caller.cost()));
+            size++;
+        }
+
+        boolean remove(String user, E element) {
+            UserQueue<E> queue = users.get(user);
+            if (queue == null || !queue.entries.removeIf(entry -> entry.element() == element)) {
+                return false;
+            }
+            size--;
+            if (queue.entries.isEmpty()) {
+                turns.remove(queue);
+                users.remove(user);
+            }
+            return true;
+        }
+
+        E poll(int quantum) {
+            while (true) {
+                UserQueue<E> queue = turns.peekFirst();
+                if (!queue.credited) {
+                    queue.deficit += quantum;
+                    queue.credited = true;
+                }
+                Entry<E> next = queue.entries.peekFirst();
+                if (next.cost() <= queue.deficit) {
+                    queue.entries.pollFirst();
+                    queue.deficit -= next.cost();
+                    size--;
+                    if (queue.entries.isEmpty()) {
+                        // Credit is not kept while a user has nothing waiting
+                        turns.pollFirst();
+                        users.remove(queue.user);
+                    }
+                    return next.element();
+                }
+                queue.credited = false;
+                turns.addLast(turns.pollFirst());
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.email.email.writer.llm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.web.reactive.function.BodyInserter;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Gemini's JSON wire format without an object tree. The request is generated straight into the
+ * outbound buffer, and the response is read token by token as its buffers arrive, keeping only
+ * the reply text, the finish/block reason and the token usage.
+ */
+final class GeminiCodec {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // Paths from the root, field names and array indexes
+    private static final Object[] TEXT = { "candidates", 0, "content", "parts", 0, "text" };
+    private static final Object[] FINISH_REASON = { "candidates", 0, "finishReason" };
+    private static final Object[] BLOCK_REASON = { "promptFeedback", "blockReason" };
+    private static final Object[] PROMPT_TOKENS = { "usageMetadata", "promptTokenCount" };
+    private static final Object[] OUTPUT_TOKENS = { "usageMetadata", "candidatesTokenCount" };
+    private static final Object[] TOTAL_TOKENS = { "usageMetadata", "totalTokenCount" };
+
+    // Finish reasons that mean the model refused, as opposed to stopping normally or at the token limit
+    private static final Set<String> BLOCKED = Set.of(
+            "SAFETY", "RECITATION", "BLOCKLIST", "PROHIBITED_CONTENT", "SPII", "IMAGE_SAFETY");
+
+    private GeminiCodec() {
+    }
+
+    static boolean isBlocked(String finishReason) {
+        return finishReason != null && BLOCKED.contains(finishReason);
+    }
+
+    /**
+     * {"contents":[{"parts":[{"text":prompt}]}]}, written into a buffer from the connection's own factory.
+     */
+    static BodyInserter<String, ReactiveHttpOutputMessage> requestBody(String prompt) {
+        return (message, context) -> message.writeWith(Mono.fromCallable(() -> writeRequest(prompt, message.bufferFactory())));
+    }
+
+    static DataBuffer writeRequest(String prompt, DataBufferFactory bufferFactory) throws IOException {
+        // Sized for an ASCII prompt; the buffer grows for anything wider
+        DataBuffer buffer = bufferFactory.allocateBuffer(prompt.length() + 64);
+        try (JsonGenerator json = JSON.createGenerator(buffer.asOutputStream(), JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("contents");
+            json.writeStartObject();
+            json.writeArrayFieldStart("parts");
+            json.writeStartObject();
+            json.writeStringField("text", prompt);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        catch (IOException | RuntimeException e) {
+            DataBufferUtils.release(buffer);
+            throw e;
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes a complete response, e.g. one streamed event.
+     */
+    static LlmResponse decode(String json) {
+        ResponseFields fields = new ResponseFields();
+        try (JsonParser parser = JSON.createParser(json)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                fields.accept(parser, token);
+            }
+        }
+        catch (IOException e) {
+            throw new LlmResponseException("Unreadable Gemini response: " + e.getMessage(), e);
+        }
+        return fields.toResponse();
+    }
+
+    static LlmResponse decode(byte[] json) {
+        ResponseDecoder decoder = new ResponseDecoder();
+        decoder.feed(ByteBuffer.wrap(json));
+        return decoder.finish();
+    }
+
+    /**
+     * Decodes one response from its body buffers, in arrival order. Each buffer is fully consumed
+     * by {@link #feed}, so the caller can release it right after. Not thread-safe.
+     */
+    static final class ResponseDecoder {
+
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private final ResponseFields fields = new ResponseFields();
+        private long parseNanos;
+
+        ResponseDecoder() {
+            try {
+                parser = JSON.createNonBlockingByteBufferParser();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        void feed(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator byteBuffers = buffer.readableByteBuffers()) {
+                while (byteBuffers.hasNext()) {
+                    feed(byteBuffers.next());
+                }
+            }
+        }
+
+        void feed(ByteBuffer bytes) {
+            long start = System.nanoTime();
+            try {
+                feeder.feedInput(bytes);
+                drain();
+            }
+            catch (IOException e) {
+                throw new LlmResponseException("Unreadable Gemini response: " + e.getMessage(), e);
+            }
+            finally {
+                parseNanos += System.nanoTime() - start;
+            }
+        }
+
+        LlmResponse finish() {
+            long start = System.nanoTime();
+            try {
+                feeder.endOfInput();
+                drain();
+                return fields.toResponse();
+            }
+            catch (IOException e) {
+                throw new LlmResponseException("Unreadable Gemini response: " + e.getMessage(), e);
+            }
+            finally {
+                parseNanos += System.nanoTime() - start;
+            }
+        }
+
+        // Time spent parsing so far, without the time spent waiting for buffers
+        long parseNanos() {
+            return parseNanos;
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                fields.accept(parser, token);
+            }
+        }
+    }
+
+    private static final class ResponseFields {
+
+        private String text;
+        private String finishReason;
+        private String blockReason;
+        private int promptTokens;
+        private int outputTokens;
+        private int totalTokens;
+        private boolean complete;
+
+        void accept(JsonParser parser, JsonToken token) throws IOException {
+            JsonStreamContext context = parser.getParsingContext();
+            switch (token) {
+                case VALUE_STRING -> {
+                    String name = parser.currentName();
+                    if ("text".equals(name) && at(context, TEXT)) {
+                        text = parser.getText();
+                    } else if ("finishReason".equals(name) && at(context, FINISH_REASON)) {
+                        finishReason = parser.getText();
+                    } else if ("blockReason".equals(name) && at(context, BLOCK_REASON)) {
+                        blockReason = parser.getText();
+                    }
+                }
+                case VALUE_NUMBER_INT -> {
+                    if (at(context, PROMPT_TOKENS)) {
+                        promptTokens = parser.getIntValue();
+                    } else if (at(context, OUTPUT_TOKENS)) {
+                        outputTokens = parser.getIntValue();
+                    } else if (at(context, TOTAL_TOKENS)) {
+                        totalTokens = parser.getIntValue();
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> complete = context.inRoot();
+                default -> {
+                }
+            }
+        }
+
+        LlmResponse toResponse() {
+            if (!complete) {
+                throw new LlmResponseException("Truncated Gemini response");
+            }
+            LlmResponse.Usage usage = promptTokens == 0 && outputTokens == 0 && totalTokens == 0
+                    ? LlmResponse.Usage.NONE
+                    : new LlmResponse.Usage(promptTokens, outputTokens, totalTokens);
+            return new LlmResponse(text, finishReason, blockReason, usage);
+        }
+
+        // Whether the current value sits exactly at path, walking the parser's context up to the root
+        private static boolean at(JsonStreamContext context, Object[] path) {
+            for (int i = path.length - 1; i >= 0; i--) {
+                if (path[i] instanceof String name) {
+                    if (!context.inObject() || !name.equals(context.getCurrentName())) {
+                        return false;
+                    }
+                } else if (!context.inArray() || context.getCurrentIndex() != (Integer) path[i]) {
+                    return false;
+                }
+                context = context.getParent();
+            }
+            return context.inRoot();
+        }
+    }
+}
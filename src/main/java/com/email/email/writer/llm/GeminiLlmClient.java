@@ -0,0 +1,229 @@
+package com.email.email.writer.llm;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Google Gemini over its REST API, on a connection pool of its own.
+ * Connections are kept alive and reused across calls (the TLS handshake to Google costs more than
+ * a short generation request), idle ones are closed before Google's side drops them, and with
+ * HTTP/2 enabled many calls share a few connections as concurrent streams.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.provider", havingValue = "gemini", matchIfMissing = true)
+public class GeminiLlmClient implements LlmClient {
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+
+    // The extract stage of email.generate.stage, next to the stages EmailGeneratorService records
+    private final Timer extractSuccess;
+    private final Timer extractError;
+    private final Counter promptTokens;
+    private final Counter outputTokens;
+
+    @Value("${gemini.api.url}")
+    private String apiUrl;
+
+    @Value("${gemini.api.stream-url}")
+    private String streamUrl;
+
+    @Value("${gemini.api.key}")
+    private String apiKey;
+
+    @Value("${llm.gemini.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${llm.gemini.pending-acquire-timeout:5s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${llm.gemini.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${llm.gemini.response-timeout:60s}")
+    private Duration responseTimeout;
+
+    @Value("${llm.gemini.max-idle-time:50s}")
+    private Duration maxIdleTime;
+
+    @Value("${llm.gemini.max-life-time:10m}")
+    private Duration maxLifeTime;
+
+    @Value("${llm.gemini.http2:true}")
+    private boolean http2;
+
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+
+    public GeminiLlmClient(WebClient.Builder webClientBuilder, MeterRegistry meterRegistry) {
+        this.webClientBuilder = webClientBuilder;
+        this.meterRegistry = meterRegistry;
+        this.extractSuccess = extractTimer("success", meterRegistry);
+        this.extractError = extractTimer("error", meterRegistry);
+        this.promptTokens = tokenCounter("prompt", meterRegistry);
+        this.outputTokens = tokenCounter("output", meterRegistry);
+    }
+
+    private static Counter tokenCounter(String type, MeterRegistry meterRegistry) {
+        return Counter.builder("llm.tokens")
+                .description("Tokens billed by Gemini, from usageMetadata")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    private static Timer extractTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("email.generate.stage")
+                .description("Time spent in one stage of generating a reply")
+                .tag("stage", "extract")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        connectionProvider = ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .protocol(http2 ? new HttpProtocol[] { HttpProtocol.H2, HttpProtocol.HTTP11 }
+                        : new HttpProtocol[] { HttpProtocol.HTTP11 })
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .compress(true)
+                .responseTimeout(responseTimeout);
+
+        // Clone so the shared builder keeps Spring's default connector for other clients
+        webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "gemini";
+    }
+
+    @Override
+    public Mono<LlmResponse> generate(String prompt) {
+        return webClient.post()
+                .uri(apiUrl + apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GeminiCodec.requestBody(prompt))
+                .retrieve()
+                // Parse each body buffer as it arrives instead of collecting the response into a String
+                .bodyToFlux(DataBuffer.class)
+                .reduceWith(GeminiCodec.ResponseDecoder::new, (decoder, buffer) -> {
+                    try {
+                        decoder.feed(buffer);
+                    }
+                    finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                    return decoder;
+                })
+                .map(this::finish);
+    }
+
+    // Gemini sends one GenerateContentResponse per SSE event, each carrying the next piece of text
+    @Override
+    public Flux<String> stream(String prompt) {
+        return webClient.post()
+                .uri(streamUrl + apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GeminiCodec.requestBody(prompt))
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .mapNotNull(ServerSentEvent::data)
+                .map(this::chunkText);
+    }
+
+    private LlmResponse finish(GeminiCodec.ResponseDecoder decoder) {
+        LlmResponse response;
+        try {
+            response = decoder.finish();
+        }
+        catch (LlmResponseException e) {
+            extractError.record(decoder.parseNanos(), TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        extractSuccess.record(decoder.parseNanos(), TimeUnit.NANOSECONDS);
+        return checkReply(response);
+    }
+
+    // The last streamed chunk often carries only finishReason/usageMetadata, so a missing text there is not an error
+    private String chunkText(String chunk) {
+        LlmResponse response = GeminiCodec.decode(chunk);
+        if (response.finishReason() != null || response.blockReason() != null) {
+            record(response);
+        }
+        checkNotBlocked(response);
+        return response.text() != null ? response.text() : "";
+    }
+
+    // A refusal or an answer without text becomes an error instead of a reply
+    private LlmResponse checkReply(LlmResponse response) {
+        record(response);
+        checkNotBlocked(response);
+        if (response.text() == null) {
+            throw new LlmResponseException("Gemini response has no text, finishReason=" + response.finishReason());
+        }
+        return response;
+    }
+
+    private static void checkNotBlocked(LlmResponse response) {
+        if (response.blockReason() != null) {
+            throw new LlmContentBlockedException(response.blockReason());
+        }
+        if (response.text() == null && GeminiCodec.isBlocked(response.finishReason())) {
+            throw new LlmContentBlockedException(response.finishReason());
+        }
+    }
+
+    private void record(LlmResponse response) {
+        promptTokens.increment(response.usage().promptTokens());
+        outputTokens.increment(response.usage().outputTokens());
+        String reason = response.finishReason() != null ? response.finishReason()
+                : response.blockReason() != null ? "PROMPT_BLOCKED" : "NONE";
+        meterRegistry.counter("llm.responses", "finish.reason", reason).increment();
+    }
+}
@@ -0,0 +1,54 @@
+package com.email.email.writer.llm;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentile of the most recent latencies. Samples go into a fixed ring, and the percentile is
+ * recomputed from a sorted copy at most once a second, so reads on the request path are a field load.
+ */
+final class LatencyTracker {
+
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final double percentile;
+    private final int minSamples;
+
+    private final AtomicLong lastRefreshNanos = new AtomicLong(System.nanoTime() - REFRESH_NANOS);
+    private volatile long percentileNanos = -1;
+
+    LatencyTracker(int window, double percentile, int minSamples) {
+        this.samples = new AtomicLongArray(window);
+        this.percentile = percentile;
+        this.minSamples = Math.min(minSamples, window);
+    }
+
+    void record(long nanos) {
+        long index = recorded.getAndIncrement();
+        samples.set((int) (index % samples.length()), nanos);
+    }
+
+    /**
+     * The configured percentile of the last samples, or -1 until there are enough of them.
+     */
+    long percentileNanos() {
+        long now = System.nanoTime();
+        long last = lastRefreshNanos.get();
+        if (now - last >= REFRESH_NANOS && lastRefreshNanos.compareAndSet(last, now)) {
+            int size = (int) Math.min(recorded.get(), samples.length());
+            if (size >= minSamples && size > 0) {
+                long[] sorted = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = samples.get(i);
+                }
+                Arrays.sort(sorted);
+                percentileNanos = sorted[(int) Math.max(0, Math.min(size - 1, Math.ceil(percentile * size) - 1))];
+            }
+        }
+        return percentileNanos;
+    }
+}
@@ -0,0 +1,144 @@
+package com.email.email.writer.llm;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Guards calls to the LLM provider:
+ * <ul>
+ * <li>every call has a deadline ({@code llm.deadline});</li>
+ * <li>a call still unanswered at the {@code llm.hedge.percentile} latency of recent calls gets a
+ * second attempt, and whichever answers first wins while the other is cancelled;</li>
+ * <li>the {@code llm} circuit breaker (configured under resilience4j.circuitbreaker.instances.llm)
+ * fails calls fast while upstream is unhealthy;</li>
+ * <li>the {@link AdaptiveConcurrencyLimiter} bounds how many calls are in flight.</li>
+ * </ul>
+ * No hedge is sent if it could not finish before the deadline or while the breaker is not closed,
+ * since extra attempts would only add load to a struggling upstream.
+ */
+@Component
+public class LlmCallPolicy {
+
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final LatencyTracker latencies;
+
+    private final LongAdder hedgesFired = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    @Value("${llm.deadline:30s}")
+    private Duration deadline;
+
+    @Value("${llm.hedge.enabled:true}")
+    private boolean hedgingEnabled;
+
+    // Used until enough calls have been seen to compute the percentile
+    @Value("${llm.hedge.initial-delay:5s}")
+    private Duration initialHedgeDelay;
+
+    @Value("${llm.hedge.min-delay:250ms}")
+    private Duration minHedgeDelay;
+
+    public LlmCallPolicy(CircuitBreakerRegistry circuitBreakerRegistry,
+                         AdaptiveConcurrencyLimiter concurrencyLimiter,
+                         @Value("${llm.hedge.percentile:0.95}") double hedgePercentile,
+                         @Value("${llm.hedge.window:1000}") int latencyWindow,
+                         MeterRegistry meterRegistry) {
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("llm");
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.latencies = new LatencyTracker(latencyWindow, hedgePercentile, 50);
+
+        FunctionCounter.builder("llm.hedge.fired", hedgesFired, LongAdder::sum)
+                .description("Second attempts sent because the first was slower than the hedge delay")
+                .register(meterRegistry);
+        FunctionCounter.builder("llm.hedge.won", hedgesWon, LongAdder::sum)
+                .description("Second attempts that answered before the first")
+                .register(meterRegistry);
+        Gauge.builder("llm.hedge.delay", this, policy -> policy.hedgeDelay().toMillis() / 1000.0)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> attempt) {
+        return execute(LlmCaller.ANONYMOUS, attempt);
+    }
+
+    /**
+     * Runs {@code attempt} under the deadline, hedging and circuit breaker, waiting for a slot as
+     * {@code caller}. {@code attempt} is called once per attempt and must return a fresh call each time.
+     */
+    public <T> Mono<T> execute(LlmCaller caller, Supplier<Mono<T>> attempt) {
+        // One slot per call; a hedge runs inside the slot of the call it belongs to
+        return concurrencyLimiter.limit(caller, Mono.defer(() -> {
+            // An open breaker rejects the first attempt straight away; there is nothing to hedge
+            Duration hedgeDelay = hedgeDelay();
+            if (!hedgingEnabled || !isClosed() || hedgeDelay.compareTo(deadline) >= 0) {
+                return timed(attempt);
+            }
+            return timed(attempt).publish(first -> {
+                // The hedge only starts while the first attempt is still pending: a slow call is hedged,
+                // a failed one is not retried. Once started, the hedge may still answer if the first fails.
+                Mono<T> hedge = Mono.delay(hedgeDelay)
+                        .takeUntilOther(first.materialize())
+                        .flatMap(tick -> {
+                            hedgesFired.increment();
+                            return timed(attempt).doOnNext(reply -> hedgesWon.increment());
+                        });
+                return Mono.firstWithValue(first, hedge);
+            }).onErrorMap(LlmCallPolicy::firstCause);
+        }).timeout(deadline));
+    }
+
+    /**
+     * Streams are not hedged (chunks from two attempts cannot be merged), but they go through the
+     * breaker and must produce their first chunk within the deadline.
+     */
+    public Flux<String> executeStream(LlmCaller caller, Supplier<Flux<String>> attempt) {
+        return concurrencyLimiter.limitStream(caller, Flux.defer(attempt)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .timeout(Mono.delay(deadline), chunk -> Mono.never()));
+    }
+
+    Duration hedgeDelay() {
+        long nanos = latencies.percentileNanos();
+        Duration delay = nanos < 0 ? initialHedgeDelay : Duration.ofNanos(nanos);
+        return delay.compareTo(minHedgeDelay) < 0 ? minHedgeDelay : delay;
+    }
+
+    private boolean isClosed() {
+        return circuitBreaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            // Deferred, so a rejected attempt never even builds its request
+            return Mono.defer(attempt)
+                    .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                    .doOnNext(reply -> latencies.record(System.nanoTime() - start));
+        });
+    }
+
+    // firstWithValue reports "all sources failed"; callers care about why the first attempt failed
+    private static Throwable firstCause(Throwable error) {
+        if (error.getCause() != null && Exceptions.isMultiple(error.getCause())) {
+            return Exceptions.unwrapMultiple(error.getCause()).get(0);
+        }
+        return error;
+    }
+}
@@ -0,0 +1,23 @@
+package com.email.email.writer.llm;
+
+/**
+ * Who an LLM call is made for, which decides its place in the {@link AdaptiveConcurrencyLimiter} queue:
+ * the user whose share it uses, its priority class and its cost in estimated prompt tokens.
+ */
+public record LlmCaller(String user, Priority priority, int cost) {
+
+    public enum Priority {
+        // A person is waiting on the answer: /generate and /generate/stream
+        INTERACTIVE,
+        // Items of /generate/batch, which can wait behind interactive calls
+        BATCH
+    }
+
+    // Calls made without a caller all share one interactive queue
+    public static final LlmCaller ANONYMOUS = new LlmCaller("", Priority.INTERACTIVE, 1);
+
+    public LlmCaller {
+        user = user != null ? user : "";
+        cost = Math.max(1, cost);
+    }
+}
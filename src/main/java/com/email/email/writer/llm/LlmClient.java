@@ -0,0 +1,25 @@
+package com.email.email.writer.llm;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * A text generation backend. Implementations own the wire format and HTTP client of their
+ * provider; callers only deal with prompts and reply text. Exactly one is active, chosen by
+ * {@code llm.provider}. Failures are error signals, never reply text: an unreadable or empty
+ * answer is an {@link LlmResponseException}, a refusal an {@link LlmContentBlockedException}.
+ */
+public interface LlmClient {
+
+    String name();
+
+    /**
+     * Generates the complete reply for {@code prompt}. The response's text is never null.
+     */
+    Mono<LlmResponse> generate(String prompt);
+
+    /**
+     * Generates the reply for {@code prompt} as a sequence of text pieces, in order.
+     */
+    Flux<String> stream(String prompt);
+}
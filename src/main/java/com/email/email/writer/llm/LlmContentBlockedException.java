@@ -0,0 +1,19 @@
+package com.email.email.writer.llm;
+
+/**
+ * The provider refused to answer this prompt, e.g. because of its safety filters.
+ * Retrying the same prompt gets the same answer, so this says nothing about upstream health.
+ */
+public class LlmContentBlockedException extends RuntimeException {
+
+    private final String reason;
+
+    public LlmContentBlockedException(String reason) {
+        super("LLM declined to answer: " + reason);
+        this.reason = reason;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,21 @@
+package com.email.email.writer.llm;
+
+import java.time.Duration;
+
+/**
+ * The LLM concurrency limit is reached and the wait queue is full (or the wait timed out).
+ * Carries a hint for the Retry-After header.
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public LlmOverloadedException(Duration retryAfter) {
+        super("Too many LLM calls in flight");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
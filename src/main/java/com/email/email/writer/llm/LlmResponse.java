@@ -0,0 +1,14 @@
+package com.email.email.writer.llm;
+
+/**
+ * One decoded model response: the reply text plus what the provider reports about it.
+ * {@code text} is null when the response carried none, {@code finishReason} and
+ * {@code blockReason} are null when absent.
+ */
+public record LlmResponse(String text, String finishReason, String blockReason, Usage usage) {
+
+    public record Usage(int promptTokens, int outputTokens, int totalTokens) {
+
+        public static final Usage NONE = new Usage(0, 0, 0);
+    }
+}
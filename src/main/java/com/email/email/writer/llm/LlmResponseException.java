@@ -0,0 +1,15 @@
+package com.email.email.writer.llm;
+
+/**
+ * The provider answered, but the response could not be read or held no reply text.
+ */
+public class LlmResponseException extends RuntimeException {
+
+    public LlmResponseException(String message) {
+        super(message);
+    }
+
+    public LlmResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,126 @@
+package com.email.email.writer.llm;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Offline stand-in for a real provider, for load tests. Nothing leaves the process: each call
+ * waits a latency drawn from a log-normal distribution (set by its median and p99) and then
+ * answers with a canned reply that repeats the prompt's placeholders, or fails at the configured
+ * error rate. Draws come from a seeded generator, so a run with the same seed and call order
+ * sees the same latencies and failures.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.provider", havingValue = "stub")
+public class StubLlmClient implements LlmClient {
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double Z_99 = 2.3263;
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\[[A-Z]+_\\d+]");
+    private static final int STREAM_CHUNKS = 8;
+
+    private final long medianNanos;
+    private final double sigma;
+    private final double errorRate;
+    private final long seed;
+    private final AtomicLong calls = new AtomicLong();
+
+    public StubLlmClient(@Value("${llm.stub.latency-median:800ms}") Duration latencyMedian,
+                         @Value("${llm.stub.latency-p99:3s}") Duration latencyP99,
+                         @Value("${llm.stub.error-rate:0.0}") double errorRate,
+                         @Value("${llm.stub.seed:42}") long seed) {
+        this.medianNanos = latencyMedian.toNanos();
+        this.sigma = latencyP99.compareTo(latencyMedian) > 0
+                ? Math.log((double) latencyP99.toNanos() / medianNanos) / Z_99
+                : 0;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    @Override
+    public String name() {
+        return "stub";
+    }
+
+    @Override
+    public Mono<LlmResponse> generate(String prompt) {
+        return Mono.defer(() -> {
+            SplittableRandom random = nextRandom();
+            Duration latency = sampleLatency(random);
+            if (random.nextDouble() < errorRate) {
+                return Mono.delay(latency).then(Mono.error(new IllegalStateException("Stub LLM failure")));
+            }
+            String reply = reply(prompt);
+            return Mono.delay(latency).thenReturn(new LlmResponse(reply, "STOP", null, estimatedUsage(prompt, reply)));
+        });
+    }
+
+    // Roughly four characters per token, so usage metrics and history have plausible numbers
+    private static LlmResponse.Usage estimatedUsage(String prompt, String reply) {
+        int promptTokens = prompt.length() / 4;
+        int outputTokens = reply.length() / 4;
+        return new LlmResponse.Usage(promptTokens, outputTokens, promptTokens + outputTokens);
+    }
+
+    // The same reply as generate, cut into pieces spread evenly over the sampled latency
+    @Override
+    public Flux<String> stream(String prompt) {
+        return Flux.defer(() -> {
+            SplittableRandom random = nextRandom();
+            Duration step = sampleLatency(random).dividedBy(STREAM_CHUNKS);
+            Flux<String> chunks = Flux.fromIterable(split(reply(prompt)))
+                    .delayElements(step);
+            if (random.nextDouble() < errorRate) {
+                return chunks.take(STREAM_CHUNKS / 2).concatWith(Mono.error(new IllegalStateException("Stub LLM failure")));
+            }
+            return chunks;
+        });
+    }
+
+    Duration sampleLatency(SplittableRandom random) {
+        return Duration.ofNanos((long) (medianNanos * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    private SplittableRandom nextRandom() {
+        return new SplittableRandom(seed + calls.getAndIncrement());
+    }
+
+    private static String reply(String prompt) {
+        StringBuilder reply = new StringBuilder("Thank you for your email. I have read your message and will follow up shortly.");
+        // The prompt's instructions mention [EMAIL_1] as an example; only echo the email's own ones
+        Matcher matcher = PLACEHOLDER.matcher(prompt);
+        Set<String> placeholders = new LinkedHashSet<>();
+        int emailStart = Math.max(0, prompt.indexOf("Original email:"));
+        while (matcher.find(emailStart)) {
+            placeholders.add(matcher.group());
+            emailStart = matcher.end();
+        }
+        for (String placeholder : placeholders) {
+            reply.append(' ').append(placeholder);
+        }
+        return reply.append("\n\nBest regards").toString();
+    }
+
+    private static List<String> split(String text) {
+        List<String> chunks = new ArrayList<>(STREAM_CHUNKS);
+        int size = Math.max(1, (text.length() + STREAM_CHUNKS - 1) / STREAM_CHUNKS);
+        for (int i = 0; i < text.length(); i += size) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + size)));
+        }
+        return chunks;
+    }
+}
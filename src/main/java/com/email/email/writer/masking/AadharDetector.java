@@ -0,0 +1,20 @@
+package com.email.email.writer.masking;
+
+/**
+ * Aadhaar numbers: {@code \b\d{12}\b}.
+ */
+public class AadharDetector extends AbstractPiiDetector {
+
+    @Override
+    public String type() {
+        return "AADHAR";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (!isDigitAt(text, start) || !isBoundary(text, start) || !digitsAt(text, start, 12)) {
+            return -1;
+        }
+        return isWordCharAt(text, start + 12) ? -1 : start + 12;
+    }
+}
@@ -0,0 +1,67 @@
+package com.email.email.writer.masking;
+
+/**
+ * Base class for detectors that need no per-input state, with the character classes the
+ * built-in detectors share. Character classes follow java.util.regex defaults (ASCII only), so
+ * the detectors behave like the pattern they replaced.
+ */
+public abstract class AbstractPiiDetector implements PiiDetector {
+
+    /**
+     * Same contract as {@link PiiMatcher#matchAt(int)}.
+     */
+    protected abstract int matchAt(CharSequence text, int start);
+
+    @Override
+    public PiiMatcher matcher(CharSequence text) {
+        return start -> matchAt(text, start);
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // \w
+    static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    // \s
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static boolean isDigitAt(CharSequence text, int i) {
+        return i < text.length() && isDigit(text.charAt(i));
+    }
+
+    static boolean isWordCharAt(CharSequence text, int i) {
+        return i >= 0 && i < text.length() && isWordChar(text.charAt(i));
+    }
+
+    // \b
+    static boolean isBoundary(CharSequence text, int i) {
+        return isWordCharAt(text, i - 1) != isWordCharAt(text, i);
+    }
+
+    // \d{count}
+    static boolean digitsAt(CharSequence text, int from, int count) {
+        if (from + count > text.length()) {
+            return false;
+        }
+        for (int i = from; i < from + count; i++) {
+            if (!isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package com.email.email.writer.masking;
+
+/**
+ * Card numbers: {@code \b(?:\d[ -]*?){13,16}\b}.
+ * <p>
+ * Walks the digits once instead of backtracking. Separators between digits are skipped, and
+ * once 13 digits are in, a separator ends the match right after the last digit, which is what
+ * the lazy separator in the original pattern did.
+ */
+public class CardDetector extends AbstractPiiDetector {
+
+    private static final int MIN_DIGITS = 13;
+    private static final int MAX_DIGITS = 16;
+
+    @Override
+    public String type() {
+        return "CARD";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (!isDigitAt(text, start) || !isBoundary(text, start)) {
+            return -1;
+        }
+        int digit = start;
+        int count = 1;
+        while (true) {
+            int next = digit + 1;
+            while (next < text.length() && isSeparator(text.charAt(next))) {
+                next++;
+            }
+            if (next > digit + 1) {
+                if (count >= MIN_DIGITS) {
+                    return digit + 1;
+                }
+                if (!isDigitAt(text, next)) {
+                    return -1;
+                }
+            } else if (count >= MAX_DIGITS || !isDigitAt(text, next)) {
+                return count >= MIN_DIGITS && !isWordCharAt(text, next) ? next : -1;
+            }
+            digit = next;
+            count++;
+        }
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-';
+    }
+}
@@ -0,0 +1,31 @@
+package com.email.email.writer.masking;
+
+/**
+ * Dates of birth: {@code \b\d{2}[-/.]\d{2}[-/.]\d{4}\b}.
+ */
+public class DobDetector extends AbstractPiiDetector {
+
+    @Override
+    public String type() {
+        return "DOB";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (!isDigitAt(text, start) || !isBoundary(text, start)
+                || !digitsAt(text, start, 2) || !isDateSeparatorAt(text, start + 2)
+                || !digitsAt(text, start + 3, 2) || !isDateSeparatorAt(text, start + 5)
+                || !digitsAt(text, start + 6, 4)) {
+            return -1;
+        }
+        return isWordCharAt(text, start + 10) ? -1 : start + 10;
+    }
+
+    private static boolean isDateSeparatorAt(CharSequence text, int i) {
+        if (i >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(i);
+        return c == '-' || c == '/' || c == '.';
+    }
+}
@@ -0,0 +1,81 @@
+package com.email.email.writer.masking;
+
+/**
+ * Email addresses: {@code [a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,}}.
+ * <p>
+ * The matcher remembers the end of the current local-part run and the result for the last
+ * {@code @} it checked, so a long run of letters without an address costs one pass instead of
+ * one pass per starting position.
+ */
+public class EmailDetector implements PiiDetector {
+
+    @Override
+    public String type() {
+        return "EMAIL";
+    }
+
+    @Override
+    public PiiMatcher matcher(CharSequence text) {
+        return new PiiMatcher() {
+            private int localEnd = -1;
+            private int checkedAt = -1;
+            private int checkedEnd = -1;
+
+            @Override
+            public int matchAt(int start) {
+                if (!isLocalChar(text.charAt(start))) {
+                    return -1;
+                }
+                if (start >= localEnd) {
+                    int end = start + 1;
+                    while (end < text.length() && isLocalChar(text.charAt(end))) {
+                        end++;
+                    }
+                    localEnd = end;
+                }
+                // The local part cannot contain '@', so the only candidate is right after the run
+                int at = localEnd;
+                if (at >= text.length() || text.charAt(at) != '@') {
+                    return -1;
+                }
+                if (at != checkedAt) {
+                    checkedAt = at;
+                    checkedEnd = matchDomain(text, at + 1);
+                }
+                return checkedEnd;
+            }
+        };
+    }
+
+    // [a-zA-Z0-9.-]+\.[a-zA-Z]{2,} with the same backtracking outcome: the last dot that is
+    // followed by at least two letters ends the domain part.
+    private static int matchDomain(CharSequence text, int from) {
+        int runEnd = from;
+        while (runEnd < text.length() && isDomainChar(text.charAt(runEnd))) {
+            runEnd++;
+        }
+        for (int dot = runEnd - 1; dot > from; dot--) {
+            if (text.charAt(dot) == '.' && isLetterAt(text, dot + 1) && isLetterAt(text, dot + 2)) {
+                int end = dot + 3;
+                while (isLetterAt(text, end)) {
+                    end++;
+                }
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLocalChar(char c) {
+        return AbstractPiiDetector.isLetter(c) || AbstractPiiDetector.isDigit(c)
+                || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isDomainChar(char c) {
+        return AbstractPiiDetector.isLetter(c) || AbstractPiiDetector.isDigit(c) || c == '.' || c == '-';
+    }
+
+    private static boolean isLetterAt(CharSequence text, int i) {
+        return i < text.length() && AbstractPiiDetector.isLetter(text.charAt(i));
+    }
+}
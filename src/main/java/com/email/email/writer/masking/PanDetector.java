@@ -0,0 +1,29 @@
+package com.email.email.writer.masking;
+
+/**
+ * PAN numbers: {@code [A-Z]{5}[0-9]{4}[A-Z]}.
+ */
+public class PanDetector extends AbstractPiiDetector {
+
+    private static final int LENGTH = 10;
+
+    @Override
+    public String type() {
+        return "PAN";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (start + LENGTH > text.length()) {
+            return -1;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            char c = text.charAt(start + i);
+            boolean ok = i >= 5 && i < 9 ? isDigit(c) : isUpper(c);
+            if (!ok) {
+                return -1;
+            }
+        }
+        return start + LENGTH;
+    }
+}
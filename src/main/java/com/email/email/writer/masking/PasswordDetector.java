@@ -0,0 +1,47 @@
+package com.email.email.writer.masking;
+
+/**
+ * Inline passwords: {@code (?i)password\s*[:=]\s*\S+}.
+ */
+public class PasswordDetector extends AbstractPiiDetector {
+
+    private static final String KEYWORD = "password";
+
+    @Override
+    public String type() {
+        return "PASSWORD";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (start + KEYWORD.length() > text.length()) {
+            return -1;
+        }
+        for (int i = 0; i < KEYWORD.length(); i++) {
+            char c = text.charAt(start + i);
+            if (isUpper(c)) {
+                c = (char) (c + ('a' - 'A')); // (?i) without UNICODE_CASE only folds ASCII
+            }
+            if (c != KEYWORD.charAt(i)) {
+                return -1;
+            }
+        }
+        int i = skipWhitespace(text, start + KEYWORD.length());
+        if (i >= text.length() || (text.charAt(i) != ':' && text.charAt(i) != '=')) {
+            return -1;
+        }
+        int valueStart = skipWhitespace(text, i + 1);
+        int end = valueStart;
+        while (end < text.length() && !isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end > valueStart ? end : -1;
+    }
+
+    private static int skipWhitespace(CharSequence text, int i) {
+        while (i < text.length() && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
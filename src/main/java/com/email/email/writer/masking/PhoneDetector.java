@@ -0,0 +1,49 @@
+package com.email.email.writer.masking;
+
+/**
+ * Indian mobile numbers: {@code \b\+?91[- ]?[6-9]\d{9}\b|\b[6-9]\d{9}\b}.
+ */
+public class PhoneDetector extends AbstractPiiDetector {
+
+    @Override
+    public String type() {
+        return "PHONE";
+    }
+
+    @Override
+    protected int matchAt(CharSequence text, int start) {
+        if (start >= text.length() || !isBoundary(text, start)) {
+            return -1;
+        }
+        int end = matchWithCountryCode(text, start);
+        return end >= 0 ? end : matchLocal(text, start);
+    }
+
+    // \+?91[- ]?[6-9]\d{9}\b
+    private static int matchWithCountryCode(CharSequence text, int start) {
+        int i = text.charAt(start) == '+' ? start + 1 : start;
+        if (i + 1 >= text.length() || text.charAt(i) != '9' || text.charAt(i + 1) != '1') {
+            return -1;
+        }
+        i += 2;
+        if (i < text.length() && (text.charAt(i) == '-' || text.charAt(i) == ' ')) {
+            int end = matchLocal(text, i + 1);
+            if (end >= 0) {
+                return end;
+            }
+        }
+        return matchLocal(text, i);
+    }
+
+    // [6-9]\d{9}\b (the leading \b is checked by the caller)
+    private static int matchLocal(CharSequence text, int start) {
+        if (start >= text.length()) {
+            return -1;
+        }
+        char first = text.charAt(start);
+        if (first < '6' || first > '9' || !digitsAt(text, start + 1, 9)) {
+            return -1;
+        }
+        return isWordCharAt(text, start + 10) ? -1 : start + 10;
+    }
+}
@@ -0,0 +1,24 @@
+package com.email.email.writer.masking;
+
+/**
+ * Detects one kind of sensitive value (email address, card number, ...) for {@link PiiScanner}.
+ * <p>
+ * The scanner walks the text once, left to right, and at every position asks each detector in
+ * priority order whether a value starts there; the first detector that answers wins, exactly like
+ * an alternation in a regular expression. Detectors that are registered as Spring beans are
+ * tried after the built-in ones.
+ */
+public interface PiiDetector {
+
+    /**
+     * Short upper-case name of the detected type, e.g. {@code EMAIL}. It becomes part of the
+     * placeholder ({@code [EMAIL_1]}), so use only A-Z, 0-9 and '_'.
+     */
+    String type();
+
+    /**
+     * Returns a matcher bound to one input. Positions passed to it only ever increase, so
+     * implementations may remember work done for earlier positions to stay linear.
+     */
+    PiiMatcher matcher(CharSequence text);
+}
@@ -0,0 +1,13 @@
+package com.email.email.writer.masking;
+
+/**
+ * A {@link PiiDetector} bound to a single input text.
+ */
+@FunctionalInterface
+public interface PiiMatcher {
+
+    /**
+     * Returns the exclusive end of the value starting at {@code start}, or -1 if none starts there.
+     */
+    int matchAt(int start);
+}
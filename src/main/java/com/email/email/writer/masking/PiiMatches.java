@@ -0,0 +1,50 @@
+package com.email.email.writer.masking;
+
+import java.util.Arrays;
+
+/**
+ * Matches found by one {@link PiiScanner} pass, in text order, stored in parallel arrays.
+ */
+public final class PiiMatches {
+
+    private int[] starts;
+    private int[] ends;
+    private PiiDetector[] detectors;
+    private int size;
+
+    PiiMatches(int expected) {
+        int capacity = Math.max(4, expected);
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.detectors = new PiiDetector[capacity];
+    }
+
+    void add(int start, int end, PiiDetector detector) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            detectors = Arrays.copyOf(detectors, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        detectors[size] = detector;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public PiiDetector detector(int i) {
+        return detectors[i];
+    }
+}
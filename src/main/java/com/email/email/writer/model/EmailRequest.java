@@ -9,4 +9,6 @@ import lombok.Data;
 public class EmailRequest {
 private String Content;
 private String tone; 
+// Skip the reply cache and always ask the LLM, e.g. when the user wants a fresh variant
+private boolean bypassCache;
 }
@@ -0,0 +1,66 @@
+package com.email.email.writer.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+// One generated reply, written behind the request by GenerationHistoryWriter.
+// Only masked text is stored: the history never holds the PII the masking removed.
+@Entity
+@Data
+@Table(name = "generation_history",
+        indexes = @Index(name = "idx_generation_history_user_created_id", columnList = "username, created_at, id"))
+public class GenerationHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "generation_history_id_seq")
+    @SequenceGenerator(name = "generation_history_id_seq", sequenceName = "generation_history_id_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(nullable = false)
+    private String username;
+
+    // generate, batch or stream
+    @Column(nullable = false, length = 16)
+    private String source;
+
+    private String tone;
+
+    @Column(name = "input_chars", nullable = false)
+    private int inputChars;
+
+    @Column(name = "output_chars", nullable = false)
+    private int outputChars;
+
+    @Column(name = "latency_ms", nullable = false)
+    private long latencyMs;
+
+    // Usage of the LLM call behind the reply. Zero for cache hits and streams; coalesced
+    // requests each report the one call they shared.
+    @Column(name = "prompt_tokens", nullable = false)
+    private int promptTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private int outputTokens;
+
+    // Served from the reply cache or reused from a nearly identical email, without an LLM call
+    @Column(nullable = false)
+    private boolean cached;
+
+    @Column(name = "masked_input", columnDefinition = "text")
+    private String maskedInput;
+
+    @Column(name = "masked_output", columnDefinition = "text")
+    private String maskedOutput;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -7,11 +7,15 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import com.email.email.writer.service.UserCacheInvalidationListener;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -20,10 +24,14 @@ import lombok.Data;
 @Entity
 @Data
 @Table(name = "users") // Avoid reserved keywords in MySQL
+@EntityListeners(UserCacheInvalidationListener.class)
 public class User implements UserDetails {
 
+    // A sequence instead of IDENTITY so inserts can be batched. It is the sequence behind the
+    // old identity column, and the bulk import's JDBC inserts draw from it with nextval.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = 1)
     private Long id;
 
     @Column(unique = true, nullable = false)
@@ -0,0 +1,259 @@
+package com.email.email.writer.ratelimit;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-key fixed-window limiter: at most {@code limit} permits per {@code period}, with each key's
+ * windows starting at its first request (the same refresh behaviour as a Resilience4j RateLimiter
+ * created for that key).
+ * <p>
+ * Each key costs one small {@link Bucket}: a start timestamp plus one long that packs the window
+ * number and the permits used, updated with CAS. Buckets that have nothing used in the current
+ * window are equivalent to a fresh bucket, so they are evicted when the store fills up.
+ * At most {@code maxKeys} keys are tracked, so a flood of random keys cannot grow the heap. If the store
+ * is still full after evicting idle buckets, a new key is refused (fail closed), or with
+ * {@code overflowSketch} counted in a fixed-size {@link OverflowSketch} instead, so it keeps its limit
+ * without taking a bucket. Keys that are already tracked keep their own bucket either way.
+ */
+public class FixedWindowRateLimiter implements RateLimitStore {
+
+    private static final int USED_BITS = 16;
+    private static final long USED_MASK = (1L << USED_BITS) - 1;
+    private static final long TOMBSTONE = -1L;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Rough heap cost of one tracked key: map node, Bucket and a short key String
+    public static final int APPROX_BYTES_PER_KEY = 120;
+
+    private final String name;
+    private final int limit;
+    private final long periodNanos;
+    private final int maxKeys;
+    private final OverflowSketch overflow;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepNanos;
+
+    public FixedWindowRateLimiter(String name, int limit, Duration period, int maxKeys) {
+        this(name, limit, period, maxKeys, false);
+    }
+
+    public FixedWindowRateLimiter(String name, int limit, Duration period, int maxKeys, boolean overflowSketch) {
+        this(name, limit, period, maxKeys, overflowSketch, System::nanoTime);
+    }
+
+    FixedWindowRateLimiter(String name, int limit, Duration period, int maxKeys, boolean overflowSketch,
+                           LongSupplier clock) {
+        if (limit <= 0 || limit > USED_MASK) {
+            throw new IllegalArgumentException("limit must be between 1 and " + USED_MASK);
+        }
+        this.name = name;
+        this.limit = limit;
+        this.periodNanos = period.toNanos();
+        this.maxKeys = maxKeys;
+        this.overflow = overflowSketch ? new OverflowSketch(clock.getAsLong()) : null;
+        this.clock = clock;
+        this.lastSweepNanos = new AtomicLong(clock.getAsLong() - SWEEP_INTERVAL_NANOS);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Duration getPeriod() {
+        return Duration.ofNanos(periodNanos);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, int permits) {
+        if (permits > limit) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        while (true) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = newBucket(key, now);
+                if (bucket == null) {
+                    // Store is full of active keys
+                    return overflow != null && overflow.tryAcquire(key, now, permits, limit, periodNanos);
+                }
+            }
+            int result = bucket.tryAcquire(now, permits, limit, periodNanos);
+            if (result != Bucket.EVICTED) {
+                return result == Bucket.ACQUIRED;
+            }
+            // Lost a race with eviction; the key gets a fresh bucket
+            buckets.remove(key, bucket);
+        }
+    }
+
+    @Override
+    public int trackedKeys() {
+        return buckets.size();
+    }
+
+    @Override
+    public long approximateBytes() {
+        return (long) buckets.size() * APPROX_BYTES_PER_KEY + (overflow != null ? OverflowSketch.BYTES : 0);
+    }
+
+    /**
+     * Drops buckets that have no permits used in their current window.
+     */
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        buckets.forEach((key, bucket) -> {
+            if (bucket.tryRetire(now, periodNanos)) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    private Bucket newBucket(String key, long now) {
+        if (buckets.size() >= maxKeys) {
+            long last = lastSweepNanos.get();
+            if (now - last >= SWEEP_INTERVAL_NANOS && lastSweepNanos.compareAndSet(last, now)) {
+                evictIdle();
+            }
+            if (buckets.size() >= maxKeys) {
+                return buckets.get(key);
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new Bucket(now));
+    }
+
+    /**
+     * Count-min table for keys that arrive while the map is full. A key maps to one cell in each row and
+     * its count is the smallest of them, so collisions can only make a key look busier than it is: an
+     * untracked key is never allowed more than the limit, and one that shares all its cells with busy
+     * keys is refused early. All cells share one window, counted from the limiter's creation.
+     * Hashes are seeded per instance so callers cannot pick keys that collide with a chosen victim.
+     * Only used while the map is full, so a lock keeps check-and-increment exact without CAS loops.
+     */
+    private static final class OverflowSketch {
+
+        static final int ROWS = 4;
+        static final int WIDTH = 4096;
+        static final long BYTES = 8L * ROWS * WIDTH;
+
+        private final long originNanos;
+        private final long seed = ThreadLocalRandom.current().nextLong();
+        // Same packing as Bucket.state: (window number << USED_BITS) | permits used
+        private final long[] cells = new long[ROWS * WIDTH];
+        private final ReentrantLock lock = new ReentrantLock();
+
+        OverflowSketch(long originNanos) {
+            this.originNanos = originNanos;
+        }
+
+        boolean tryAcquire(String key, long now, int permits, int limit, long periodNanos) {
+            long window = (now - originNanos) / periodNanos;
+            long hash = hash(key);
+            int step = (int) (hash >>> 32) | 1;
+            int[] index = new int[ROWS];
+            lock.lock();
+            try {
+                long used = Long.MAX_VALUE;
+                for (int row = 0; row < ROWS; row++) {
+                    index[row] = row * WIDTH + Math.floorMod((int) hash + row * step, WIDTH);
+                    used = Math.min(used, used(cells[index[row]], window));
+                }
+                if (used + permits > limit) {
+                    return false;
+                }
+                // Conservative update: raise each cell only as far as this key's new count
+                long next = (window << USED_BITS) | (used + permits);
+                for (int i : index) {
+                    if (used(cells[i], window) < used + permits) {
+                        cells[i] = next;
+                    }
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static long used(long cell, long window) {
+            return (cell >>> USED_BITS) == window ? cell & USED_MASK : 0;
+        }
+
+        private long hash(String key) {
+            long h = seed;
+            for (int i = 0; i < key.length(); i++) {
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            return h ^ (h >>> 33);
+        }
+    }
+
+    // Static so a bucket carries no reference to its limiter
+    private static final class Bucket {
+
+        static final int ACQUIRED = 0;
+        static final int REJECTED = 1;
+        static final int EVICTED = 2;
+
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Bucket.class, "state", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final long startNanos;
+        // (window number << USED_BITS) | permits used in that window, or TOMBSTONE once evicted
+        private volatile long state;
+
+        Bucket(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        int tryAcquire(long now, int permits, int limit, long periodNanos) {
+            long window = (now - startNanos) / periodNanos;
+            while (true) {
+                long current = state;
+                if (current == TOMBSTONE) {
+                    return EVICTED;
+                }
+                long used = (current >>> USED_BITS) == window ? current & USED_MASK : 0;
+                if (used + permits > limit) {
+                    return REJECTED;
+                }
+                long next = (window << USED_BITS) | (used + permits);
+                if (STATE.compareAndSet(this, current, next)) {
+                    return ACQUIRED;
+                }
+            }
+        }
+
+        // Marks the bucket evicted if nothing is used in the current window
+        boolean tryRetire(long now, long periodNanos) {
+            long window = (now - startNanos) / periodNanos;
+            long current = state;
+            boolean idle = current != TOMBSTONE
+                    && ((current >>> USED_BITS) != window || (current & USED_MASK) == 0);
+            return idle && STATE.compareAndSet(this, current, TOMBSTONE);
+        }
+    }
+}
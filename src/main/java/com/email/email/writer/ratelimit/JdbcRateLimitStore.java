@@ -0,0 +1,279 @@
+package com.email.email.writer.ratelimit;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Per-key fixed-window limit shared by every replica through one database table, with the same
+ * windows as {@link FixedWindowRateLimiter}: {@code period} long, starting at the key's first request.
+ * <p>
+ * To keep the database off the hot path each node leases permits. One round trip takes up to
+ * {@code leasePermits} permits, and the ones not needed yet are spent locally until the window ends.
+ * A window the database reports as used up is remembered locally as well, so repeated rejections
+ * never reach the database.
+ * <p>
+ * Leased permits are counted as used in the database, so together the nodes never admit more than
+ * {@code limit} per window. The error goes the other way: permits a node leased but did not spend are
+ * unavailable to the other nodes until the window ends, so a key whose requests are spread over N
+ * nodes may be refused while up to (N - 1) * (lease - 1) permits sit unspent elsewhere. To keep that
+ * bounded for small limits the lease is capped at half the limit.
+ * <p>
+ * Windows are computed from each node's wall clock, so replicas should be NTP-synced.
+ * If the database cannot be reached, the store limits per node with a {@link FixedWindowRateLimiter}
+ * until it can.
+ */
+public class JdbcRateLimitStore implements RateLimitStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcRateLimitStore.class);
+
+    static final String TABLE = "rate_limit_bucket";
+
+    // Longer keys cannot be stored; no username is longer either (users.username is VARCHAR(255))
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // Map node, Lease and its AtomicInteger, plus a short key String
+    private static final int APPROX_BYTES_PER_LEASE = 140;
+
+    private final String name;
+    private final int limit;
+    private final long periodMillis;
+    private final int leasePermits;
+    private final int maxLocalKeys;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LongSupplier clock;
+    private final FixedWindowRateLimiter fallback;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+    private final AtomicLong lastCleanupMillis;
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private volatile boolean degraded;
+
+    // overflowSketch applies to the per-node fallback, see FixedWindowRateLimiter
+    public JdbcRateLimitStore(String name, int limit, Duration period, int leasePermits, int maxLocalKeys,
+                              boolean overflowSketch, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this(name, limit, period, leasePermits, maxLocalKeys, overflowSketch, jdbcTemplate, transactionManager,
+                System::currentTimeMillis);
+    }
+
+    JdbcRateLimitStore(String name, int limit, Duration period, int leasePermits, int maxLocalKeys, boolean overflowSketch,
+                       JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, LongSupplier clock) {
+        this.name = name;
+        this.limit = limit;
+        this.periodMillis = period.toMillis();
+        this.leasePermits = Math.max(1, Math.min(leasePermits, limit / 2));
+        this.maxLocalKeys = maxLocalKeys;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+        this.fallback = new FixedWindowRateLimiter(name, limit, period, maxLocalKeys, overflowSketch);
+        this.lastCleanupMillis = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Creates the shared table if it is missing. Plain SQL that both PostgreSQL and H2 accept.
+     */
+    public void createTableIfMissing() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + "limiter VARCHAR(64) NOT NULL, "
+                + "bucket_key VARCHAR(" + MAX_KEY_LENGTH + ") NOT NULL, "
+                + "window_start BIGINT NOT NULL, "
+                + "used INTEGER NOT NULL, "
+                + "PRIMARY KEY (limiter, bucket_key))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_window_idx ON " + TABLE
+                + " (limiter, window_start)");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, int permits) {
+        if (permits > limit) {
+            return false;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return fallback.tryAcquire(key, permits);
+        }
+        long now = clock.getAsLong();
+        Lease lease = leases.get(key);
+        if (lease != null && now < lease.windowEnd) {
+            if (lease.tryTake(permits)) {
+                return true;
+            }
+            if (lease.exhausted) {
+                return false;
+            }
+        }
+        try {
+            boolean acquired = acquireShared(key, permits, now);
+            if (degraded) {
+                degraded = false;
+                logger.info("Rate limiter '{}' is sharing limits through the database again", name);
+            }
+            return acquired;
+        } catch (DataAccessException | TransactionException e) {
+            fallbacks.increment();
+            if (!degraded) {
+                degraded = true;
+                logger.warn("Rate limiter '{}' cannot reach the database, limiting per node until it can: {}",
+                        name, e.getMessage());
+            }
+            return fallback.tryAcquire(key, permits);
+        }
+    }
+
+    @Override
+    public int trackedKeys() {
+        return leases.size() + fallback.trackedKeys();
+    }
+
+    @Override
+    public long approximateBytes() {
+        return (long) leases.size() * APPROX_BYTES_PER_LEASE + fallback.approximateBytes();
+    }
+
+    /**
+     * Transactions run against the shared table.
+     */
+    public long roundTrips() {
+        return roundTrips.sum();
+    }
+
+    /**
+     * Requests answered by the per-node fallback because the database failed.
+     */
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    private boolean acquireShared(String key, int permits, long now) {
+        // Only lease ahead if the lease can be kept; otherwise take exactly what is needed
+        boolean keepLease = leases.containsKey(key) || hasRoomForLease(now);
+        int wanted = keepLease ? Math.max(permits, leasePermits) : permits;
+        Grant grant;
+        try {
+            grant = transactionTemplate.execute(status -> lockAndTake(key, permits, wanted, now));
+        } catch (DuplicateKeyException e) {
+            // Another node inserted this key's row first; the retry finds and locks it
+            grant = transactionTemplate.execute(status -> lockAndTake(key, permits, wanted, now));
+        }
+        cleanUpIfDue(now);
+
+        if (keepLease) {
+            int left = grant.granted() - (grant.acquired() ? permits : 0);
+            leases.merge(key, new Lease(grant.windowEnd(), left, grant.exhausted()), Lease::combine);
+        }
+        return grant.acquired();
+    }
+
+    private Grant lockAndTake(String key, int permits, int wanted, long now) {
+        roundTrips.increment();
+        List<long[]> rows = jdbcTemplate.query(
+                "SELECT window_start, used FROM " + TABLE + " WHERE limiter = ? AND bucket_key = ? FOR UPDATE",
+                (rs, rowNum) -> new long[] { rs.getLong(1), rs.getInt(2) }, name, key);
+
+        long windowStart = now;
+        int used = 0;
+        if (!rows.isEmpty()) {
+            long start = rows.get(0)[0];
+            // A row written by a node whose clock runs slightly ahead still counts as the current window
+            long elapsedWindows = Math.max(0, now - start) / periodMillis;
+            windowStart = start + elapsedWindows * periodMillis;
+            used = elapsedWindows == 0 ? (int) rows.get(0)[1] : 0;
+        }
+        long windowEnd = windowStart + periodMillis;
+        int available = limit - used;
+        if (available < permits) {
+            return new Grant(false, 0, windowEnd, available == 0);
+        }
+
+        int granted = Math.min(available, wanted);
+        if (rows.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " (limiter, bucket_key, window_start, used) VALUES (?, ?, ?, ?)",
+                    name, key, windowStart, granted);
+        } else {
+            jdbcTemplate.update("UPDATE " + TABLE + " SET window_start = ?, used = ? WHERE limiter = ? AND bucket_key = ?",
+                    windowStart, used + granted, name, key);
+        }
+        return new Grant(true, granted, windowEnd, false);
+    }
+
+    private boolean hasRoomForLease(long now) {
+        if (leases.size() < maxLocalKeys) {
+            return true;
+        }
+        long last = lastSweepMillis.get();
+        if (now - last >= SWEEP_INTERVAL_MILLIS && lastSweepMillis.compareAndSet(last, now)) {
+            leases.values().removeIf(lease -> now >= lease.windowEnd);
+        }
+        return leases.size() < maxLocalKeys;
+    }
+
+    // Rows whose window has ended are equivalent to no row. Runs on one request every few minutes per node.
+    private void cleanUpIfDue(long now) {
+        long last = lastCleanupMillis.get();
+        if (now - last >= CLEANUP_INTERVAL_MILLIS && lastCleanupMillis.compareAndSet(last, now)) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE limiter = ? AND window_start <= ?",
+                    name, now - periodMillis);
+            logger.debug("Rate limiter '{}' removed {} expired rows", name, deleted);
+        }
+    }
+
+    private record Grant(boolean acquired, int granted, long windowEnd, boolean exhausted) {
+    }
+
+    private static final class Lease {
+
+        final long windowEnd;
+        final AtomicInteger remaining;
+        // The database had nothing left for this window when the lease was taken
+        final boolean exhausted;
+
+        Lease(long windowEnd, int remaining, boolean exhausted) {
+            this.windowEnd = windowEnd;
+            this.remaining = new AtomicInteger(remaining);
+            this.exhausted = exhausted;
+        }
+
+        boolean tryTake(int permits) {
+            while (true) {
+                int current = remaining.get();
+                if (current < permits) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - permits)) {
+                    return true;
+                }
+            }
+        }
+
+        // Permits still held from the same window carry over into the new lease
+        static Lease combine(Lease old, Lease fresh) {
+            if (old.windowEnd != fresh.windowEnd) {
+                return fresh;
+            }
+            return new Lease(fresh.windowEnd, old.remaining.getAndSet(0) + fresh.remaining.get(), fresh.exhausted);
+        }
+    }
+}
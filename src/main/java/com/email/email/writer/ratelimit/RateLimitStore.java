@@ -0,0 +1,26 @@
+package com.email.email.writer.ratelimit;
+
+/**
+ * Backend for a named per-key limit: {@link FixedWindowRateLimiter} keeps the counts in this JVM,
+ * {@link JdbcRateLimitStore} shares them with the other replicas through the database.
+ */
+public interface RateLimitStore {
+
+    String getName();
+
+    /**
+     * Takes {@code permits} permits for {@code key} if they are all available in the current window.
+     */
+    boolean tryAcquire(String key, int permits);
+
+    default boolean tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Keys currently held in this JVM.
+     */
+    int trackedKeys();
+
+    long approximateBytes();
+}
@@ -0,0 +1,25 @@
+package com.email.email.writer.repo;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.email.email.writer.model.GenerationHistory;
+
+// Reads only; rows are inserted in batches by GenerationHistoryWriter
+public interface GenerationHistoryRepository extends JpaRepository<GenerationHistory, Long> {
+
+    // Newest entries first; both queries are served by the (username, created_at, id) index
+    List<GenerationHistory> findByUsernameOrderByCreatedAtDescIdDesc(String username, Pageable pageable);
+
+    // The entries after (createdAt, id) in that order: the index seeks straight there instead of skipping OFFSET rows
+    @Query("SELECT h FROM GenerationHistory h WHERE h.username = :username"
+            + " AND (h.createdAt < :createdAt OR (h.createdAt = :createdAt AND h.id < :id))"
+            + " ORDER BY h.createdAt DESC, h.id DESC")
+    List<GenerationHistory> findOlder(@Param("username") String username, @Param("createdAt") Instant createdAt,
+                                      @Param("id") long id, Pageable pageable);
+}
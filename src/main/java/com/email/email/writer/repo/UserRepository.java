@@ -10,5 +10,6 @@ import com.email.email.writer.model.User;
 public interface UserRepository extends JpaRepository<User,Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
+    boolean existsByUsernameOrEmail(String username, String email);
 
 }
\ No newline at end of file
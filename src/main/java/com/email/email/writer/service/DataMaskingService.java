@@ -1,105 +1,142 @@
 package com.email.email.writer.service;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.email.email.writer.masking.PiiDetector;
+import com.email.email.writer.masking.PiiMatches;
+import com.email.email.writer.masking.PiiScanner;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 public class DataMaskingService {
 
-    // Regex to detect different sensitive data types
-    private static final Pattern SENSITIVE_DATA_PATTERN = Pattern.compile(
-            "(?<EMAIL>[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,})|" +    // Email
-            "(?<CARD>\\b(?:\\d[ -]*?){13,16}\\b)|" +                          // Credit Card
-            "(?<AADHAR>\\b\\d{12}\\b)|" +                                     // Aadhaar
-            "(?<PAN>[A-Z]{5}[0-9]{4}[A-Z]{1})|" +                             // PAN
-            "(?<PASSWORD>(?i)(password\\s*[:=]\\s*\\S+))|" +                  // Password
-            "(?<DOB>\\b\\d{2}[-/\\.]\\d{2}[-/\\.]\\d{4}\\b)|" +               // DOB
-            "(?<PHONE>\\b\\+?91[- ]?[6-9]\\d{9}\\b|\\b[6-9]\\d{9}\\b)"        // Phone
-    );
+    private final PiiScanner scanner;
+    // Texts of at least this many characters are scanned in chunks on the pool
+    private final int parallelThreshold;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Built-in detectors only, always scanning on the calling thread.
+     */
+    public DataMaskingService() {
+        this(PiiScanner.builtInDetectors(), Integer.MAX_VALUE, 0, 0);
+    }
 
     /**
-     * Masks sensitive data partially so users can still recognize it.
+     * Custom detectors declared as beans are tried after the built-in ones, in their @Order.
+     */
+    @Autowired
+    public DataMaskingService(ObjectProvider<PiiDetector> customDetectors,
+                              @Value("${email.masking.parallel-threshold:131072}") int parallelThreshold,
+                              @Value("${email.masking.chunk-size:32768}") int chunkSize,
+                              @Value("${email.masking.parallelism:0}") int parallelism) {
+        this(withCustom(customDetectors), parallelThreshold, chunkSize, parallelism);
+    }
+
+    // parallelism 0 means one thread per available core
+    DataMaskingService(List<PiiDetector> detectors, int parallelThreshold, int chunkSize, int parallelism) {
+        this.scanner = new PiiScanner(detectors);
+        this.parallelThreshold = parallelThreshold;
+        this.chunkSize = chunkSize;
+        this.pool = parallelThreshold == Integer.MAX_VALUE ? null
+                : new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<PiiDetector> withCustom(ObjectProvider<PiiDetector> customDetectors) {
+        List<PiiDetector> detectors = new ArrayList<>(PiiScanner.builtInDetectors());
+        customDetectors.orderedStream().forEach(detectors::add);
+        return detectors;
+    }
+
+    /**
+     * Replaces every sensitive value with a placeholder such as {@code [PHONE_2]}.
+     * Equal values share one placeholder and different values always get different ones.
      */
     public MaskedData mask(String text) {
         if (text == null || text.isEmpty()) {
-            return new MaskedData(text, new HashMap<>());
+            return new MaskedData(text, new ReplacementTable(0));
         }
 
-        Map<String, String> replacements = new HashMap<>();
-        Matcher matcher = SENSITIVE_DATA_PATTERN.matcher(text);
-        StringBuilder sb = new StringBuilder();
-
-        while (matcher.find()) {
-            String originalValue = matcher.group();
-            String maskedValue;
-
-            if (matcher.group("EMAIL") != null) {
-                maskedValue = maskEmail(originalValue);
-            } else if (matcher.group("CARD") != null) {
-                maskedValue = maskCard(originalValue);
-            } else if (matcher.group("AADHAR") != null) {
-                maskedValue = maskAadhar(originalValue);
-            } else if (matcher.group("PAN") != null) {
-                maskedValue = maskPan(originalValue);
-            } else if (matcher.group("PASSWORD") != null) {
-                maskedValue = "password=********"; // Fully masked
-            } else if (matcher.group("DOB") != null) {
-                maskedValue = "XX-XX-" + originalValue.substring(originalValue.length() - 4); // Keep year
-            } else if (matcher.group("PHONE") != null) {
-                maskedValue = maskPhone(originalValue);
-            } else {
-                maskedValue = "-------MASKED-------";
+        // Placeholders are numbered in text order below, so the result is the same either way
+        PiiMatches matches = pool != null && text.length() >= parallelThreshold
+                ? scanner.scanChunked(text, chunkSize, pool)
+                : scanner.scan(text);
+        ReplacementTable replacements = new ReplacementTable(matches.size());
+        if (matches.size() == 0) {
+            return new MaskedData(text, replacements);
+        }
+
+        Map<String, String> placeholders = new HashMap<>();
+        StringBuilder sb = new StringBuilder(text.length());
+        int copied = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            String originalValue = text.substring(matches.start(i), matches.end(i));
+            String placeholder = placeholders.get(originalValue);
+            if (placeholder == null) {
+                placeholder = replacements.add(matches.detector(i).type(), originalValue);
+                placeholders.put(originalValue, placeholder);
             }
 
-            replacements.put(maskedValue, originalValue);
-            matcher.appendReplacement(sb, maskedValue);
+            sb.append(text, copied, matches.start(i)).append(placeholder);
+            copied = matches.end(i);
         }
-        matcher.appendTail(sb);
+        sb.append(text, copied, text.length());
 
         return new MaskedData(sb.toString(), replacements);
     }
 
-    // ---------------------- Masking Rules ----------------------
-
-    private String maskEmail(String email) {
-        int atIndex = email.indexOf('@');
-        if (atIndex <= 2) return "****" + email.substring(atIndex);
-        return email.substring(0, 2) + "****" + email.substring(atIndex);
-    }
-
-    private String maskCard(String card) {
-        card = card.replaceAll("[^0-9]", ""); // remove spaces/hyphens
-        return "XXXX-XXXX-XXXX-" + card.substring(card.length() - 4);
-    }
-
-    private String maskAadhar(String aadhar) {
-        return "XXXX-XXXX-" + aadhar.substring(aadhar.length() - 4);
-    }
-
-    private String maskPan(String pan) {
-        return pan.substring(0, 2) + "XXXXX" + pan.substring(pan.length() - 1);
-    }
+    /**
+     * Restores masked values back to original in one pass over the text.
+     */
+    public String unmask(String text, ReplacementTable replacements) {
+        if (text == null || replacements == null || replacements.size() == 0) {
+            return text;
+        }
 
-    private String maskPhone(String phone) {
-        String digits = phone.replaceAll("[^0-9]", "");
-        return "XXXXXX" + digits.substring(digits.length() - 4);
+        StringBuilder sb = null;
+        int copied = 0;
+        int i = text.indexOf('[');
+        while (i >= 0) {
+            int index = replacements.placeholderAt(text, i);
+            if (index >= 0) {
+                if (sb == null) {
+                    sb = new StringBuilder(text.length() + 64);
+                }
+                sb.append(text, copied, i).append(replacements.original(index));
+                copied = i + replacements.placeholderLength(index);
+                i = text.indexOf('[', copied);
+            } else {
+                i = text.indexOf('[', i + 1);
+            }
+        }
+        if (sb == null) {
+            return text;
+        }
+        return sb.append(text, copied, text.length()).toString();
     }
 
     /**
-     * Restores masked values back to original.
+     * Creates an unmasker for a reply that is streamed back in chunks.
      */
-    public String unmask(String text, Map<String, String> replacements) {
-        if (text == null || replacements == null || replacements.isEmpty()) {
-            return text;
-        }
+    public StreamingUnmasker streamingUnmasker(ReplacementTable replacements) {
+        return new StreamingUnmasker(replacements);
+    }
 
-        for (Map.Entry<String, String> entry : replacements.entrySet()) {
-            text = text.replace(entry.getKey(), entry.getValue());
+    @PreDestroy
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
         }
-        return text;
     }
 }
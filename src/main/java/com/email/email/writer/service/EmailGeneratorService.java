@@ -1,91 +1,268 @@
 package com.email.email.writer.service;
 
-import java.util.Map;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
+import com.email.email.writer.dto.BatchReplyItem;
+import com.email.email.writer.llm.LlmCallPolicy;
+import com.email.email.writer.llm.LlmCaller;
+import com.email.email.writer.llm.LlmClient;
+import com.email.email.writer.llm.LlmContentBlockedException;
+import com.email.email.writer.llm.LlmResponse;
 import com.email.email.writer.model.EmailRequest;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.email.email.writer.model.GenerationHistory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 public class EmailGeneratorService {
-	
-	private final WebClient webclient;
+
+	private static final Logger logger = LoggerFactory.getLogger(EmailGeneratorService.class);
+
+	// Bump whenever PromptBuilder changes, so cached replies from the old prompt are not served
+	static final int PROMPT_TEMPLATE_VERSION = 3;
+
+	private final LlmClient llmClient;
+	private final LlmCallPolicy llmCallPolicy;
 	private final DataMaskingService dataMaskingService; // Already injected, which is great
+	private final PromptBuilder promptBuilder;
+	private final ReplyCache replyCache;
+	private final ReplyCoalescer replyCoalescer;
+	private final SimilarReplyIndex similarReplies;
+	private final GenerationHistoryWriter historyWriter;
+
+	// email.generate.stage{stage=...}; the extract stage is recorded by the LLM client
+	private final Timer trimTimer;
+	private final Timer maskTimer;
+	private final Timer promptTimer;
+	private final Timer upstreamSuccessTimer;
+	private final Timer upstreamErrorTimer;
+	private final Timer unmaskTimer;
+	private final DistributionSummary inputSize;
+	private final DistributionSummary outputSize;
 
-	@Value("${gemini.api.url}")
-	private String geminiApiUrl;
+	@Value("${email.reply-cache.enabled:true}")
+	private boolean replyCacheEnabled;
 
-	@Value("${gemini.api.key}")
-	private String geminiApiKey;
-	
-	public EmailGeneratorService(WebClient.Builder webclientBuilder, DataMaskingService dataMaskingService) {
-		this.webclient = webclientBuilder.build();
+	@Value("${email.coalescing.enabled:true}")
+	private boolean coalescingEnabled;
+
+	@Value("${email.batch.max-items:50}")
+	private int batchMaxItems;
+
+	@Value("${email.batch.concurrency:4}")
+	private int batchConcurrency;
+
+	public EmailGeneratorService(LlmClient llmClient, LlmCallPolicy llmCallPolicy, DataMaskingService dataMaskingService,
+			PromptBuilder promptBuilder, ReplyCache replyCache, ReplyCoalescer replyCoalescer, SimilarReplyIndex similarReplies,
+			GenerationHistoryWriter historyWriter, MeterRegistry meterRegistry) {
+		this.llmClient = llmClient;
+		this.llmCallPolicy = llmCallPolicy;
 		this.dataMaskingService = dataMaskingService;
+		this.promptBuilder = promptBuilder;
+		this.replyCache = replyCache;
+		this.replyCoalescer = replyCoalescer;
+		this.similarReplies = similarReplies;
+		this.historyWriter = historyWriter;
+		this.trimTimer = stageTimer("trim", "success", meterRegistry);
+		this.maskTimer = stageTimer("mask", "success", meterRegistry);
+		this.promptTimer = stageTimer("prompt", "success", meterRegistry);
+		this.upstreamSuccessTimer = stageTimer("upstream", "success", meterRegistry);
+		this.upstreamErrorTimer = stageTimer("upstream", "error", meterRegistry);
+		this.unmaskTimer = stageTimer("unmask", "success", meterRegistry);
+		this.inputSize = sizeSummary("email.generate.input.size", "Characters in the submitted email", meterRegistry);
+		this.outputSize = sizeSummary("email.generate.output.size", "Characters in the generated reply", meterRegistry);
 	}
-	
-	public String generateEmailReply(EmailRequest emailRequest) {
-		// 1. MASK the original email content first
-        MaskedData maskedData = dataMaskingService.mask(emailRequest.getContent());
-        //System.out.println(maskedData);
-		// 2. Build the prompt using the MASKED content
-		String prompt = buildPrompt(maskedData.maskedText(), emailRequest.getTone());
-        
-		// Craft a request body
-		Map<String,Object> requestBody=Map.of(
-				"contents",new Object[] {
-						Map.of("parts", new Object[] {
-								Map.of("text", prompt)
-						})
-				}
-		);
-
-		// 3. Do request and get a response as before
-		String rawApiResponse = webclient.post()
-				.uri(geminiApiUrl + geminiApiKey)
-				.header("Content-Type","application/json")
-				.bodyValue(requestBody)
-				.retrieve()
-				.bodyToMono(String.class)
-				.block();
-		
-		// 4. Extract the text content from the API's JSON response
-        String llmResponseText = extractResponseContent(rawApiResponse);
-
-        // 5. UNMASK the response from the LLM before returning it to the user
-        String finalResponse = dataMaskingService.unmask(llmResponseText, maskedData.replacements());
-
-		// Return the final, unmasked response
-		return finalResponse;
-        //return llmResponseText;
+
+	// Every stage carries the same tag keys (GeminiLlmClient's extract stage too): Prometheus wants one set per name
+	private static Timer stageTimer(String stage, String outcome, MeterRegistry meterRegistry) {
+		return Timer.builder("email.generate.stage")
+				.description("Time spent in one stage of generating a reply")
+				.tag("stage", stage)
+				.tag("outcome", outcome)
+				.register(meterRegistry);
 	}
 
-	private String extractResponseContent(String response) {
-		try {
-			ObjectMapper mapper = new ObjectMapper();
-			JsonNode rootNode = mapper.readTree(response);
-			return rootNode.path("candidates")
-					.get(0).path("content")
-					.path("parts").get(0)
-					.path("text").asText();
-		}
-		catch(Exception e) {
-			return "Error Processing Request " + e.getMessage();
-		}
+	private static DistributionSummary sizeSummary(String name, String description, MeterRegistry meterRegistry) {
+		return DistributionSummary.builder(name)
+				.description(description)
+				.baseUnit("characters")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Generates the reply without blocking the calling thread. Masking, the LLM call
+	 * and unmasking all run when the returned Mono is subscribed. Cancelling it while
+	 * the call waits for an LLM slot takes the call out of the queue, unless an identical
+	 * request still shares it. Spring MVC only cancels a returned Mono when the async
+	 * request times out. A successful reply is added to {@code username}'s generation history.
+	 */
+	public Mono<String> generateEmailReply(EmailRequest emailRequest, String username) {
+		return generateEmailReply(emailRequest, username, "generate", LlmCaller.Priority.INTERACTIVE);
+	}
+
+	private Mono<String> generateEmailReply(EmailRequest emailRequest, String username, String source,
+			LlmCaller.Priority priority) {
+		// 1. TRIM the quoted thread and footers, MASK what is left, then cut it to the token budget
+		return Mono.fromCallable(() -> {
+					String content = emailRequest.getContent();
+					inputSize.record(content != null ? content.length() : 0);
+					String prepared = trimTimer.record(() -> promptBuilder.prepare(content));
+					MaskedData masked = maskTimer.record(() -> dataMaskingService.mask(prepared));
+					return promptBuilder.fitToBudget(content, masked);
+				})
+				.flatMap(maskedData -> {
+					long start = System.nanoTime();
+					// 2. Build the prompt using the MASKED content
+					String prompt = promptTimer.record(() -> promptBuilder.build(maskedData.maskedText(), emailRequest.getTone()));
+					LlmCaller caller = new LlmCaller(username, priority, promptBuilder.estimateTokens(prompt));
+
+					// 3. Serve the masked reply from the cache or from a nearly identical recent email,
+					// or ask the LLM for it. Both only ever see masked text, so unmasking still happens per request.
+					String maskedText = maskedData.maskedText();
+					String tone = emailRequest.getTone();
+					String key = ReplyCache.key(maskedText, tone, PROMPT_TEMPLATE_VERSION);
+					boolean useCache = replyCacheEnabled && !emailRequest.isBypassCache();
+					String cached = useCache ? replyCache.get(key) : null;
+					String similar = cached == null && useCache ? similarReplies.find(caller.user(), maskedText, tone, maskedData.replacements()) : null;
+					// A sampled near-duplicate hit is generated anyway, to measure how far reuse drifts
+					boolean sampled = similar != null && similarReplies.sampleHit();
+					String reused = cached != null ? cached : sampled ? null : similar;
+					Mono<LlmResponse> maskedReply = reused != null
+							? Mono.just(new LlmResponse(reused, null, null, LlmResponse.Usage.NONE))
+							: coalescedReply(key, prompt, caller, useCache, maskedText, tone);
+					if (sampled) {
+						maskedReply = maskedReply.doOnNext(response -> similarReplies.recordSample(similar, response.text()));
+					}
+
+					// 5. UNMASK the response from the LLM before returning it to the user
+					return maskedReply.map(response -> {
+						String reply = unmaskTimer.record(() -> dataMaskingService.unmask(response.text(), maskedData.replacements()));
+						outputSize.record(reply.length());
+						recordHistory(username, source, emailRequest, maskedText, response.text(),
+								reply.length(), start, response.usage(), reused != null);
+						return reply;
+					});
+				});
 	}
 
-    // I've modified this method to take the content and tone directly
-    // This makes the logic cleaner and more reusable.
-	private String buildPrompt(String content, String tone) {
-		StringBuilder prompt = new StringBuilder();
-		prompt.append("Generate a professional email reply for the following email content. Please don't generate a subject line.");
-		if(tone != null && !tone.isEmpty()) {
-			prompt.append("Use a ").append(tone).append(" tone.");
+	// Identical requests already waiting on the LLM share that call instead of making their own.
+	// The caching decision and the place in the LLM queue are the leader's, so the cache is written once per call.
+	private Mono<LlmResponse> coalescedReply(String key, String prompt, LlmCaller caller, boolean cacheReply,
+			String maskedText, String tone) {
+		if (!coalescingEnabled) {
+			return cacheReply ? requestAndCache(key, prompt, caller, maskedText, tone) : requestReply(prompt, caller);
 		}
-		prompt.append("\n Original email: \n").append(content);
-		return prompt.toString();
+		return replyCoalescer.coalesce(key,
+				() -> cacheReply ? requestAndCache(key, prompt, caller, maskedText, tone) : requestReply(prompt, caller));
+	}
+
+	private Mono<LlmResponse> requestAndCache(String key, String prompt, LlmCaller caller, String maskedText, String tone) {
+		return requestReply(prompt, caller).doOnNext(response -> {
+			replyCache.put(key, response.text());
+			similarReplies.remember(caller.user(), maskedText, tone, response.text());
+		});
+	}
+
+	// 4. The client returns the reply text already extracted from the provider's response, with its token usage.
+	// The policy adds the deadline, a hedged second attempt for slow calls and the circuit breaker,
+	// and waits for an LLM slot in the caller's queue. Timed once per LLM call, so cache hits and
+	// coalesced followers don't show up here.
+	private Mono<LlmResponse> requestReply(String prompt, LlmCaller caller) {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			return llmCallPolicy.execute(caller, () -> llmClient.generate(prompt))
+					.doOnSuccess(response -> upstreamSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+					.doOnError(e -> upstreamErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+		});
+	}
+
+	public int getBatchMaxItems() {
+		return batchMaxItems;
+	}
+
+	/**
+	 * Generates replies for several emails. Each email is masked on the parallel scheduler and at most
+	 * email.batch.concurrency LLM calls run at once. They wait for LLM slots as batch calls, behind
+	 * interactive ones. A failed email becomes an error item instead of failing the batch. With {@code ordered} the items come in request order, otherwise as they finish.
+	 */
+	public Flux<BatchReplyItem> generateBatch(List<EmailRequest> emailRequests, boolean ordered, String username) {
+		Flux<Integer> indexes = Flux.range(0, emailRequests.size());
+		return ordered
+				? indexes.flatMapSequential(i -> generateBatchItem(i, emailRequests.get(i), username), batchConcurrency)
+				: indexes.flatMap(i -> generateBatchItem(i, emailRequests.get(i), username), batchConcurrency);
+	}
+
+	private Mono<BatchReplyItem> generateBatchItem(int index, EmailRequest emailRequest, String username) {
+		return generateEmailReply(emailRequest, username, "batch", LlmCaller.Priority.BATCH)
+				.subscribeOn(Schedulers.parallel())
+				.map(reply -> BatchReplyItem.success(index, reply))
+				.onErrorResume(e -> {
+					if (e instanceof LlmContentBlockedException) {
+						return Mono.just(BatchReplyItem.failure(index, "The AI service declined to reply to this email."));
+					}
+					// WebClient messages contain the request URI, and with it the API key
+					logger.warn("Batch item {} failed: {}", index, e.getClass().getSimpleName());
+					return Mono.just(BatchReplyItem.failure(index, "Could not generate a reply for this email."));
+				});
+	}
+
+	/**
+	 * Streams the reply as the LLM produces it. Each element is a piece of already
+	 * unmasked text; masked values split across chunks are held back until complete.
+	 * A stream that runs to the end is added to the history without token usage.
+	 */
+	public Flux<String> streamEmailReply(EmailRequest emailRequest, String username) {
+		long start = System.nanoTime();
+		String content = emailRequest.getContent();
+		inputSize.record(content != null ? content.length() : 0);
+		String prepared = trimTimer.record(() -> promptBuilder.prepare(content));
+		MaskedData maskedData = promptBuilder.fitToBudget(content,
+				maskTimer.record(() -> dataMaskingService.mask(prepared)));
+		String prompt = promptTimer.record(() -> promptBuilder.build(maskedData.maskedText(), emailRequest.getTone()));
+		StreamingUnmasker unmasker = dataMaskingService.streamingUnmasker(maskedData.replacements());
+		StringBuilder maskedReply = new StringBuilder();
+		int[] replyChars = new int[1];
+
+		LlmCaller caller = new LlmCaller(username, LlmCaller.Priority.INTERACTIVE, promptBuilder.estimateTokens(prompt));
+
+		return llmCallPolicy.executeStream(caller, () -> llmClient.stream(prompt))
+				.doOnNext(maskedReply::append)
+				.map(unmasker::feed)
+				.concatWith(Mono.fromSupplier(unmasker::flush))
+				.filter(chunk -> !chunk.isEmpty())
+				.doOnNext(chunk -> replyChars[0] += chunk.length())
+				.doOnComplete(() -> recordHistory(username, "stream", emailRequest, maskedData.maskedText(),
+						maskedReply.toString(), replyChars[0], start, LlmResponse.Usage.NONE, false));
+	}
+
+	// Masked text only, so the history never holds what the masking removed
+	private void recordHistory(String username, String source, EmailRequest emailRequest, String maskedInput,
+			String maskedOutput, int replyChars, long startNanos, LlmResponse.Usage usage, boolean cached) {
+		GenerationHistory entry = new GenerationHistory();
+		entry.setUsername(username);
+		entry.setSource(source);
+		entry.setTone(emailRequest.getTone());
+		entry.setInputChars(emailRequest.getContent() != null ? emailRequest.getContent().length() : 0);
+		entry.setOutputChars(replyChars);
+		entry.setLatencyMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		entry.setPromptTokens(usage.promptTokens());
+		entry.setOutputTokens(usage.outputTokens());
+		entry.setCached(cached);
+		entry.setMaskedInput(maskedInput);
+		entry.setMaskedOutput(maskedOutput);
+		entry.setCreatedAt(Instant.now());
+		historyWriter.record(entry);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package com.email.email.writer.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Removes the parts of an email that don't need a reply: the quoted history of earlier messages, the
+ * signature and legal footers. Works line by line on plain text and keeps everything else as written.
+ * <p>
+ * Forwarded messages are kept, since the forwarded text is often what the user wants answered.
+ * If nothing would be left, the email is returned unchanged.
+ */
+final class EmailThreadTrimmer {
+
+    // Gmail, Apple Mail, Thunderbird: "On Mon, 6 May 2024 at 10:02, Jane <jane@x.com> wrote:"
+    private static final Pattern ON_WROTE = Pattern.compile("^On\\b.{0,300}\\bwrote:$");
+    private static final Pattern WROTE_END = Pattern.compile("^.{0,300}\\bwrote:$");
+    private static final Pattern ORIGINAL_MESSAGE = Pattern.compile("^-{2,}\\s*Original Message\\s*-{2,}$",
+            Pattern.CASE_INSENSITIVE);
+    // Outlook's quoted header: From: ... then Sent:/Date: within the next lines
+    private static final Pattern OUTLOOK_FROM = Pattern.compile("^\\*?From:\\*?\\s.+");
+    private static final Pattern OUTLOOK_SENT = Pattern.compile("^\\*?(Sent|Date):\\*?\\s.+");
+    // A footer heading in capitals, or a sentence in legal wording; "Important notice: the office is closed"
+    // and "Confidentially, ..." are ordinary text
+    private static final Pattern DISCLAIMER = Pattern.compile(
+            "^((CONFIDENTIALITY NOTICE|CONFIDENTIAL|DISCLAIMER|LEGAL NOTICE|IMPORTANT NOTICE)\\b"
+                    + "|(?i:(confidentiality notice|disclaimer|legal notice|important notice)\\b.{0,120}"
+                    + "\\b(confidential|privileged|intended solely|intended only|intended recipient))"
+                    + "|(?i:This (e-?mail|message|communication)\\b.{0,120}\\b(confidential|privileged|intended solely|intended only)))");
+    private static final Pattern MOBILE_FOOTER = Pattern.compile(
+            "^(Sent from my \\w+|Sent from (Outlook|Mail|Yahoo Mail)\\b|Get Outlook for \\w+).*", Pattern.CASE_INSENSITIVE);
+
+    private EmailThreadTrimmer() {
+    }
+
+    static String trim(String content) {
+        if (content == null || content.isEmpty()) {
+            return content;
+        }
+        String[] lines = content.split("\r?\n", -1);
+        StringBuilder out = new StringBuilder(content.length());
+        boolean previousBlank = true;
+        boolean hasText = false;
+        int blankRun = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String stripped = line.strip();
+            // A header above any text of its own is the pasted email's own header, not its history
+            if ((hasText && isHistoryStart(lines, i, stripped))
+                    || line.equals("-- ") || stripped.equals("--")
+                    || (previousBlank && DISCLAIMER.matcher(stripped).lookingAt() && isTrailingBlock(lines, i))) {
+                break;
+            }
+            if (stripped.startsWith(">") || MOBILE_FOOTER.matcher(stripped).matches()) {
+                continue;
+            }
+            // Quoted blocks and dropped lines leave gaps; keep at most one blank line in a row
+            if (stripped.isEmpty()) {
+                if (++blankRun > 1) {
+                    continue;
+                }
+            }
+            else {
+                blankRun = 0;
+                hasText = true;
+            }
+            out.append(line).append('\n');
+            previousBlank = stripped.isEmpty();
+        }
+        String trimmed = out.toString().strip();
+        return trimmed.isEmpty() ? content : trimmed;
+    }
+
+    // A footer is the last paragraph before the end, the signature or the quoted history
+    private static boolean isTrailingBlock(String[] lines, int i) {
+        boolean blank = false;
+        for (int j = i + 1; j < lines.length; j++) {
+            String stripped = lines[j].strip();
+            if (stripped.isEmpty()) {
+                blank = true;
+            }
+            else if (isHistoryStart(lines, j, stripped) || lines[j].equals("-- ") || stripped.equals("--")) {
+                return true;
+            }
+            else if (blank && !stripped.startsWith(">") && !MOBILE_FOOTER.matcher(stripped).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHistoryStart(String[] lines, int i, String stripped) {
+        if (ON_WROTE.matcher(stripped).matches() || ORIGINAL_MESSAGE.matcher(stripped).matches()) {
+            return true;
+        }
+        // Gmail wraps long "On ... wrote:" headers onto a second line
+        if (stripped.startsWith("On ") && i + 1 < lines.length && WROTE_END.matcher(lines[i + 1].strip()).matches()) {
+            return true;
+        }
+        if (OUTLOOK_FROM.matcher(stripped).matches()) {
+            for (int j = i + 1; j < Math.min(lines.length, i + 4); j++) {
+                if (OUTLOOK_SENT.matcher(lines[j].strip()).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,225 @@
+package com.email.email.writer.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.email.email.writer.model.GenerationHistory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind store for the generation history. {@link #record} only puts the entry on a bounded
+ * queue; one background thread inserts it later in a JDBC batch, once {@code history.batch-size}
+ * entries are waiting or {@code history.flush-interval} has passed. A request never waits on the database.
+ * <p>
+ * When the queue is full the entry is dropped: {@link #record} runs on the thread that completes the
+ * reply, often a Netty event loop, so it must never wait for room. A batch the database rejects is
+ * dropped as well. Every drop is counted in history.dropped. On shutdown the queue is drained
+ * before the application context closes.
+ */
+@Service
+public class GenerationHistoryWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationHistoryWriter.class);
+
+    // Longest idle wait, so close() is noticed quickly without interrupting a flush in progress
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final String INSERT = "INSERT INTO generation_history (id, username, source, tone, input_chars, output_chars,"
+            + " latency_ms, prompt_tokens, output_tokens, cached, masked_input, masked_output, created_at)"
+            + " VALUES (nextval('generation_history_id_seq'), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxTextChars;
+    private final Duration shutdownTimeout;
+    private final BlockingQueue<GenerationHistory> queue;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    private final Counter written;
+    private final Counter droppedFull;
+    private final Counter droppedError;
+    private final Counter droppedClosed;
+    private final Timer flushTimer;
+
+    public GenerationHistoryWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                   @Value("${history.enabled:true}") boolean enabled,
+                                   @Value("${history.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${history.batch-size:200}") int batchSize,
+                                   @Value("${history.flush-interval:1s}") Duration flushInterval,
+                                   @Value("${history.max-text-chars:20000}") int maxTextChars,
+                                   @Value("${history.shutdown-timeout:10s}") Duration shutdownTimeout,
+                                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxTextChars = maxTextChars;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        Gauge.builder("history.queue.size", queue, Collection::size)
+                .description("History entries waiting to be written")
+                .register(meterRegistry);
+        this.written = Counter.builder("history.written")
+                .description("History entries inserted into the database")
+                .register(meterRegistry);
+        this.droppedFull = droppedCounter("full", meterRegistry);
+        this.droppedError = droppedCounter("error", meterRegistry);
+        this.droppedClosed = droppedCounter("closed", meterRegistry);
+        this.flushTimer = Timer.builder("history.flush")
+                .description("Time to insert one batch of history entries")
+                .register(meterRegistry);
+
+        this.writerThread = new Thread(this::run, "history-writer");
+        this.writerThread.setDaemon(true);
+        if (enabled) {
+            writerThread.start();
+        }
+    }
+
+    private static Counter droppedCounter(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("history.dropped")
+                .description("History entries that were never written")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues {@code entry} for writing. Never blocks or throws; an entry that cannot be queued is counted
+     * and dropped.
+     */
+    public void record(GenerationHistory entry) {
+        if (!enabled) {
+            return;
+        }
+        if (closed) {
+            droppedClosed.increment();
+            return;
+        }
+        entry.setMaskedInput(truncate(entry.getMaskedInput()));
+        entry.setMaskedOutput(truncate(entry.getMaskedOutput()));
+
+        if (!queue.offer(entry)) {
+            droppedFull.increment();
+        }
+    }
+
+    private String truncate(String text) {
+        return text != null && text.length() > maxTextChars ? text.substring(0, maxTextChars) : text;
+    }
+
+    private void run() {
+        List<GenerationHistory> batch = new ArrayList<>(batchSize);
+        long flushAt = System.nanoTime() + flushIntervalNanos;
+        while (!closed) {
+            try {
+                long wait = Math.min(flushAt - System.nanoTime(), MAX_POLL_NANOS);
+                GenerationHistory next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (next != null) {
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            }
+            catch (InterruptedException e) {
+                // Only close() stops this thread
+                continue;
+            }
+            if (batch.size() >= batchSize || System.nanoTime() - flushAt >= 0) {
+                flush(batch);
+                flushAt = System.nanoTime() + flushIntervalNanos;
+            }
+        }
+
+        // Shutting down: write whatever is left without waiting for the interval
+        do {
+            queue.drainTo(batch, batchSize - batch.size());
+            flush(batch);
+        } while (!queue.isEmpty());
+    }
+
+    private void flush(List<GenerationHistory> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (ps, entry) -> {
+                        ps.setString(1, entry.getUsername());
+                        ps.setString(2, entry.getSource());
+                        ps.setString(3, entry.getTone());
+                        ps.setInt(4, entry.getInputChars());
+                        ps.setInt(5, entry.getOutputChars());
+                        ps.setLong(6, entry.getLatencyMs());
+                        ps.setInt(7, entry.getPromptTokens());
+                        ps.setInt(8, entry.getOutputTokens());
+                        ps.setBoolean(9, entry.isCached());
+                        ps.setString(10, entry.getMaskedInput());
+                        ps.setString(11, entry.getMaskedOutput());
+                        ps.setTimestamp(12, Timestamp.from(entry.getCreatedAt()));
+                    }));
+            written.increment(batch.size());
+        }
+        catch (RuntimeException e) {
+            // The thread must survive a database outage; the entries are lost, the next batch tries again
+            logger.warn("Dropped {} history entries: {}", batch.size(), e.getMessage());
+            droppedError.increment(batch.size());
+        }
+        finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batch.clear();
+        }
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!enabled) {
+            return;
+        }
+        try {
+            writerThread.join(shutdownTimeout.toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Entries queued after the final drain, or left behind by a writer that did not finish in time
+        int left = queue.size();
+        if (left > 0) {
+            queue.clear();
+            droppedClosed.increment(left);
+            logger.warn("Dropped {} history entries on shutdown", left);
+        }
+    }
+}
@@ -1,6 +1,3 @@
 package com.email.email.writer.service;
 
-import java.util.Map;
-
-public record MaskedData(String maskedText, Map<String, String> replacements) {}
-
+public record MaskedData(String maskedText, ReplacementTable replacements) {}
@@ -0,0 +1,21 @@
+package com.email.email.writer.service;
+
+import java.time.Duration;
+
+/**
+ * The password hashing pool and its queue are full, or the wait for a free thread timed out.
+ * Carries a hint for the Retry-After header.
+ */
+public class PasswordHashingOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public PasswordHashingOverloadedException(Duration retryAfter) {
+        super("Too many password hashes in progress");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,125 @@
+package com.email.email.writer.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Short-lived cache of authenticated principals for AuthTokenFilter, so a request with a valid
+ * JWT doesn't need a database round trip. Entries are copies without the password hash.
+ * UserCacheInvalidationListener drops an entry whenever its user row is updated or deleted.
+ */
+@Component
+public class PrincipalCache {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final DistributionSummary ageAtHit;
+
+    private record Entry(UserDetails principal, long loadedAtNanos) {}
+
+    @Autowired
+    public PrincipalCache(@Value("${auth.principal.cache.max-entries:10000}") int maxEntries,
+                          @Value("${auth.principal.cache.ttl:60s}") Duration ttl,
+                          MeterRegistry meterRegistry) {
+        this(maxEntries, ttl, meterRegistry, System::nanoTime);
+    }
+
+    PrincipalCache(int maxEntries, Duration ttl, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.lastSweepNanos = new AtomicLong(nanoClock.getAsLong());
+
+        FunctionCounter.builder("auth.principal.cache.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("auth.principal.cache.misses", misses, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("auth.principal.cache.invalidations", invalidations, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("auth.principal.cache.hit.ratio", this, PrincipalCache::hitRatio).register(meterRegistry);
+        Gauge.builder("auth.principal.cache.size", entries, ConcurrentHashMap::size).register(meterRegistry);
+        // How old the served principal was; the worst case is bounded by the TTL
+        this.ageAtHit = DistributionSummary.builder("auth.principal.cache.age")
+                .baseUnit("milliseconds")
+                .description("Age of cached principals when they were served")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached principal, or loads it with {@code loader} and caches a copy.
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader) {
+        long now = nanoClock.getAsLong();
+        Entry entry = entries.get(username);
+        if (entry != null && now - entry.loadedAtNanos() < ttlNanos) {
+            hits.increment();
+            ageAtHit.record(TimeUnit.NANOSECONDS.toMillis(now - entry.loadedAtNanos()));
+            return entry.principal();
+        }
+
+        misses.increment();
+        UserDetails loaded = loader.apply(username);
+        UserDetails principal = User.withUsername(loaded.getUsername())
+                .password("")
+                .authorities(loaded.getAuthorities())
+                .accountExpired(!loaded.isAccountNonExpired())
+                .accountLocked(!loaded.isAccountNonLocked())
+                .credentialsExpired(!loaded.isCredentialsNonExpired())
+                .disabled(!loaded.isEnabled())
+                .build();
+
+        if (entries.size() >= maxEntries) {
+            sweepExpired(now);
+        }
+        if (entries.size() < maxEntries || entries.containsKey(username)) {
+            entries.put(username, new Entry(principal, now));
+        }
+        return principal;
+    }
+
+    /**
+     * Forgets a user, e.g. after their password or account state changed.
+     */
+    public void invalidate(String username) {
+        if (username != null && entries.remove(username) != null) {
+            invalidations.increment();
+        }
+    }
+
+    private double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    private void sweepExpired(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        entries.values().removeIf(entry -> now - entry.loadedAtNanos() >= ttlNanos);
+    }
+}
@@ -0,0 +1,164 @@
+package com.email.email.writer.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Turns a submitted email into the prompt sent to the LLM. {@link #prepare} runs before masking and
+ * drops quoted history, signatures and footers. {@link #fitToBudget} runs after masking and cuts the
+ * masked text to {@code email.prompt.max-input-tokens}, so a cut can never leave part of a value unmasked.
+ * {@link #build} puts the masked text behind the instructions for the requested tone.
+ * <p>
+ * Tokens are estimated as {@code email.prompt.chars-per-token} characters each; the real counts
+ * per call are in llm.tokens.
+ */
+@Component
+public class PromptBuilder {
+
+    // Between the kept head and tail of an email that was over budget
+    static final String TRUNCATION_MARKER = "\n[...]\n";
+
+    private final int maxInputChars;
+    private final int charsPerToken;
+    // Instruction prefix per configured tone, built once; other tones are built per request
+    private final Map<String, String> templates = new HashMap<>();
+
+    private final DistributionSummary savedChars;
+    private final DistributionSummary savedTokens;
+    private final Counter truncated;
+
+    public PromptBuilder(@Value("${email.prompt.max-input-tokens:4000}") int maxInputTokens,
+                         @Value("${email.prompt.chars-per-token:4}") int charsPerToken,
+                         @Value("${email.prompt.tones:formal,urgent,professional,friendly}") List<String> tones,
+                         MeterRegistry meterRegistry) {
+        this.charsPerToken = Math.max(1, charsPerToken);
+        this.maxInputChars = Math.max(1, maxInputTokens) * this.charsPerToken;
+        for (String tone : tones) {
+            templates.put(tone, template(tone));
+        }
+        this.savedChars = DistributionSummary.builder("email.prompt.saved.size")
+                .description("Characters of the email left out of the prompt by trimming and the token budget")
+                .baseUnit("characters")
+                .register(meterRegistry);
+        this.savedTokens = DistributionSummary.builder("email.prompt.saved.tokens")
+                .description("Estimated prompt tokens saved by trimming and the token budget")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+        this.truncated = Counter.builder("email.prompt.truncated")
+                .description("Emails still over the token budget after trimming, cut to fit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the part of {@code content} worth sending: without quoted history, signature and footers.
+     */
+    public String prepare(String content) {
+        return content != null ? EmailThreadTrimmer.trim(content) : null;
+    }
+
+    /**
+     * Cuts the masked text to the token budget, keeping its placeholders whole, and records how much
+     * of {@code content}, the email as submitted, was left out by trimming and the budget.
+     */
+    public MaskedData fitToBudget(String content, MaskedData masked) {
+        if (content == null || masked.maskedText() == null) {
+            return masked;
+        }
+        String fitted = fitToBudget(masked.maskedText(), masked.replacements());
+        int saved = content.length() - fitted.length();
+        savedChars.record(Math.max(saved, 0));
+        savedTokens.record(Math.max(saved, 0) / (double) charsPerToken);
+        return fitted == masked.maskedText() ? masked : new MaskedData(fitted, masked.replacements());
+    }
+
+    // Keeps the start and the end, where the greeting, the request and the sign-off usually are
+    String fitToBudget(String text, ReplacementTable replacements) {
+        if (text.length() <= maxInputChars) {
+            return text;
+        }
+        truncated.increment();
+        int available = Math.max(maxInputChars - TRUNCATION_MARKER.length(), 2);
+        int headEnd = boundaryBefore(text, available * 3 / 4, replacements);
+        int tailStart = boundaryAfter(text, text.length() - (available - headEnd), replacements);
+        return text.substring(0, headEnd) + TRUNCATION_MARKER + text.substring(tailStart);
+    }
+
+    // Cut at whitespace near the limit, so words are not split. Placeholders hold no whitespace; if there
+    // is none nearby, the cut moves to the start of a placeholder it would split, or off a surrogate pair
+    private static int boundaryBefore(String text, int limit, ReplacementTable replacements) {
+        for (int i = limit; i > limit - 200 && i > 0; i--) {
+            if (Character.isWhitespace(text.charAt(i - 1))) {
+                return i;
+            }
+        }
+        int placeholder = placeholderAround(text, limit, replacements);
+        if (placeholder >= 0) {
+            return placeholder;
+        }
+        return Character.isLowSurrogate(text.charAt(limit)) ? limit - 1 : limit;
+    }
+
+    private static int boundaryAfter(String text, int limit, ReplacementTable replacements) {
+        for (int i = limit; i < limit + 200 && i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        int placeholder = placeholderAround(text, limit, replacements);
+        if (placeholder >= 0) {
+            return placeholder + replacements.placeholderLength(replacements.placeholderAt(text, placeholder));
+        }
+        return Character.isLowSurrogate(text.charAt(limit)) ? limit + 1 : limit;
+    }
+
+    // Start of the placeholder that a cut at position would split, or -1
+    private static int placeholderAround(String text, int position, ReplacementTable replacements) {
+        int from = Math.max(0, position - replacements.maxPlaceholderLength() + 1);
+        for (int i = position - 1; i >= from; i--) {
+            if (text.charAt(i) == '[') {
+                int index = replacements.placeholderAt(text, i);
+                return index >= 0 && i + replacements.placeholderLength(index) > position ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Estimated tokens in {@code text}, at the configured characters per token.
+     */
+    public int estimateTokens(String text) {
+        return text != null ? (text.length() + charsPerToken - 1) / charsPerToken : 0;
+    }
+
+    /**
+     * The prompt for already masked email text.
+     */
+    public String build(String maskedContent, String tone) {
+        String template = tone != null ? templates.get(tone) : null;
+        if (template == null) {
+            template = template(tone);
+        }
+        return template.concat(maskedContent != null ? maskedContent : "");
+    }
+
+    private static String template(String tone) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Generate a professional email reply for the following email content. Please don't generate a subject line.");
+        if (tone != null && !tone.isEmpty()) {
+            prompt.append(" Use a ").append(tone).append(" tone.");
+        }
+        prompt.append(" Private details in the email are replaced by placeholders such as [EMAIL_1];"
+                + " keep any placeholder you use exactly as written.");
+        prompt.append(" Earlier messages in the thread, signatures and footers have been left out.");
+        prompt.append("\n Original email: \n");
+        return prompt.toString();
+    }
+}
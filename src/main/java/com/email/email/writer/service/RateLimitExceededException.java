@@ -0,0 +1,11 @@
+package com.email.email.writer.service;
+
+/**
+ * Signals that a per-user limit from {@link RateLimiterService} was hit.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    public RateLimitExceededException(String limiterName) {
+        super("Rate limit exceeded: " + limiterName);
+    }
+}
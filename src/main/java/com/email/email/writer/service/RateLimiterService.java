@@ -1,42 +1,131 @@
 package com.email.email.writer.service;
 
 
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import com.email.email.writer.ratelimit.FixedWindowRateLimiter;
+import com.email.email.writer.ratelimit.JdbcRateLimitStore;
+import com.email.email.writer.ratelimit.RateLimitStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class RateLimiterService {
 
-    private final ConcurrentHashMap<String, RateLimiter> loginLimiters = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, RateLimiter> emailLimiters = new ConcurrentHashMap<>();
-
-    // Get or create per-user login limiter (10/day)
-    public RateLimiter getLoginLimiter(String username) {
-        return loginLimiters.computeIfAbsent(username, user ->
-            RateLimiter.of("loginApi-" + user,
-                RateLimiterConfig.custom()
-                    .limitForPeriod(10)
-                    .limitRefreshPeriod(Duration.ofDays(1))
-                    .timeoutDuration(Duration.ZERO)
-                    .build()
-            )
-        );
-    }
-
-    // Get or create per-user email limiter (4/minute)
-    public RateLimiter getEmailLimiter(String username) {
-        return emailLimiters.computeIfAbsent(username, user ->
-            RateLimiter.of("emailApi-" + user,
-                RateLimiterConfig.custom()
-                    .limitForPeriod(4)
-                    .limitRefreshPeriod(Duration.ofMinutes(1))
-                    .timeoutDuration(Duration.ZERO)
-                    .build()
-            )
-        );
+    // Per-user login limiter (10/day). Keyed by whatever username an unauthenticated caller
+    // sends, so the number of tracked keys is capped.
+    private final RateLimitStore loginLimiter;
+
+    // Per-user email limiter (4/minute)
+    private final RateLimitStore emailLimiter;
+
+    // Per-user quota of emails sent through /generate/batch, one permit per email
+    private final RateLimitStore batchLimiter;
+
+    private final Counter loginRejected;
+    private final Counter emailRejected;
+    private final Counter batchRejected;
+
+    private final int batchEmails;
+
+    // 'local' counts per JVM; 'jdbc' shares the counts with the other replicas through the database
+    public RateLimiterService(@Value("${rate-limit.backend:local}") String backend,
+                              @Value("${rate-limit.login.max-keys:200000}") int loginMaxKeys,
+                              @Value("${rate-limit.email.max-keys:200000}") int emailMaxKeys,
+                              @Value("${rate-limit.batch.emails:200}") int batchEmails,
+                              @Value("${rate-limit.batch.period:1h}") Duration batchPeriod,
+                              @Value("${rate-limit.jdbc.lease-permits:10}") int leasePermits,
+                              ObjectProvider<JdbcTemplate> jdbcTemplate,
+                              ObjectProvider<PlatformTransactionManager> transactionManager,
+                              MeterRegistry meterRegistry) {
+        if ("jdbc".equalsIgnoreCase(backend)) {
+            JdbcRateLimitStore login = new JdbcRateLimitStore("loginApi", 10, Duration.ofDays(1), leasePermits,
+                    loginMaxKeys, true, jdbcTemplate.getObject(), transactionManager.getObject());
+            JdbcRateLimitStore email = new JdbcRateLimitStore("emailApi", 4, Duration.ofMinutes(1), leasePermits,
+                    emailMaxKeys, false, jdbcTemplate.getObject(), transactionManager.getObject());
+            JdbcRateLimitStore batch = new JdbcRateLimitStore("emailBatchApi", batchEmails, batchPeriod, leasePermits,
+                    emailMaxKeys, false, jdbcTemplate.getObject(), transactionManager.getObject());
+            login.createTableIfMissing();
+            for (JdbcRateLimitStore store : new JdbcRateLimitStore[] { login, email, batch }) {
+                FunctionCounter.builder("ratelimiter.store.round.trips", store, JdbcRateLimitStore::roundTrips)
+                        .description("Transactions against the shared rate limit table")
+                        .tag("limiter", store.getName())
+                        .register(meterRegistry);
+                FunctionCounter.builder("ratelimiter.store.fallbacks", store, JdbcRateLimitStore::fallbacks)
+                        .description("Requests limited per node because the database failed")
+                        .tag("limiter", store.getName())
+                        .register(meterRegistry);
+            }
+            this.loginLimiter = login;
+            this.emailLimiter = email;
+            this.batchLimiter = batch;
+        } else {
+            // Once the login store is full, new usernames are counted in a fixed-size sketch, so a flood of
+            // made-up usernames neither locks real users out nor lifts the limit; email stays fail closed.
+            this.loginLimiter = new FixedWindowRateLimiter("loginApi", 10, Duration.ofDays(1), loginMaxKeys, true);
+            this.emailLimiter = new FixedWindowRateLimiter("emailApi", 4, Duration.ofMinutes(1), emailMaxKeys);
+            this.batchLimiter = new FixedWindowRateLimiter("emailBatchApi", batchEmails, batchPeriod, emailMaxKeys);
+        }
+        this.batchEmails = batchEmails;
+
+        for (RateLimitStore limiter : new RateLimitStore[] { loginLimiter, emailLimiter, batchLimiter }) {
+            Gauge.builder("ratelimiter.tracked.keys", limiter, RateLimitStore::trackedKeys)
+                    .tag("limiter", limiter.getName())
+                    .register(meterRegistry);
+            Gauge.builder("ratelimiter.memory.bytes", limiter, RateLimitStore::approximateBytes)
+                    .tag("limiter", limiter.getName())
+                    .register(meterRegistry);
+        }
+        this.loginRejected = rejectedCounter(loginLimiter, meterRegistry);
+        this.emailRejected = rejectedCounter(emailLimiter, meterRegistry);
+        this.batchRejected = rejectedCounter(batchLimiter, meterRegistry);
+    }
+
+    private static Counter rejectedCounter(RateLimitStore limiter, MeterRegistry meterRegistry) {
+        return Counter.builder("ratelimiter.rejected")
+                .description("Requests turned away with 429")
+                .tag("limiter", limiter.getName())
+                .register(meterRegistry);
+    }
+
+    private static boolean counted(boolean acquired, Counter rejected) {
+        if (!acquired) {
+            rejected.increment();
+        }
+        return acquired;
+    }
+
+    public boolean tryAcquireLogin(String username) {
+        return counted(loginLimiter.tryAcquire(username), loginRejected);
+    }
+
+    public boolean tryAcquireEmail(String username) {
+        return counted(emailLimiter.tryAcquire(username), emailRejected);
+    }
+
+    // A batch is charged one permit per email against the batch quota, all or nothing
+    public boolean tryAcquireBatch(String username, int emails) {
+        return counted(batchLimiter.tryAcquire(username, emails), batchRejected);
+    }
+
+    // Emails one user may send in batches per rate-limit.batch.period; a larger batch can never fit
+    public int getBatchEmailLimit() {
+        return batchEmails;
+    }
+
+    // Reactive form for the generate endpoint: the permit is taken on subscription and a rejection
+    // surfaces as a RateLimitExceededException error signal instead of a thrown exception.
+    public <T> Mono<T> limitEmail(String username, Mono<T> call) {
+        return Mono.defer(() -> tryAcquireEmail(username)
+                ? call
+                : Mono.error(new RateLimitExceededException(emailLimiter.getName())));
     }
 }
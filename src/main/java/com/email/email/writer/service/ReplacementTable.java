@@ -0,0 +1,160 @@
+package com.email.email.writer.service;
+
+import java.util.Arrays;
+
+/**
+ * Maps the placeholders written by {@link DataMaskingService#mask(String)} back to the original
+ * values. Entry {@code i} is written as {@code [TYPE_n]} with {@code n = i + 1}, so the placeholder
+ * itself carries the index and no lookup structure beyond two parallel arrays is needed.
+ */
+public final class ReplacementTable {
+
+    static final int NO_MATCH = -1;
+    static final int INCOMPLETE = -2;
+
+    private String[] types;
+    private String[] originals;
+    private int size;
+    private int maxPlaceholderLength;
+
+    ReplacementTable(int expected) {
+        int capacity = Math.max(2, expected);
+        this.types = new String[capacity];
+        this.originals = new String[capacity];
+    }
+
+    /**
+     * Adds a value and returns its placeholder.
+     */
+    String add(String type, String original) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            originals = Arrays.copyOf(originals, size * 2);
+        }
+        types[size] = type;
+        originals[size] = original;
+        size++;
+        maxPlaceholderLength = Math.max(maxPlaceholderLength, placeholderLength(size - 1));
+        return placeholder(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String type(int i) {
+        return types[i];
+    }
+
+    public String original(int i) {
+        return originals[i];
+    }
+
+    public String placeholder(int i) {
+        return "[" + types[i] + "_" + (i + 1) + "]";
+    }
+
+    int placeholderLength(int i) {
+        return types[i].length() + stringSize(i + 1) + 3;
+    }
+
+    int maxPlaceholderLength() {
+        return maxPlaceholderLength;
+    }
+
+    /**
+     * Reads the placeholder that starts with the '[' at {@code from}. Returns its entry index,
+     * {@link #NO_MATCH} if the text there is not one of this table's placeholders, or
+     * {@link #INCOMPLETE} if the text ends before that can be decided.
+     */
+    int placeholderAt(CharSequence text, int from) {
+        int limit = Math.min(text.length(), from + maxPlaceholderLength);
+        int i = from + 1;
+        int underscore = -1;
+        while (i < limit && isPlaceholderChar(text.charAt(i))) {
+            if (text.charAt(i) == '_') {
+                underscore = i;
+            }
+            i++;
+        }
+        if (i == text.length()) {
+            return i - from < maxPlaceholderLength ? INCOMPLETE : NO_MATCH;
+        }
+        if (i == limit || text.charAt(i) != ']' || underscore <= from + 1 || underscore == i - 1
+                || text.charAt(underscore + 1) == '0') {
+            return NO_MATCH;
+        }
+
+        int index = 0;
+        for (int k = underscore + 1; k < i; k++) {
+            char c = text.charAt(k);
+            if (c < '0' || c > '9' || index > size) {
+                return NO_MATCH;
+            }
+            index = index * 10 + (c - '0');
+        }
+        index--;
+        if (index < 0 || index >= size) {
+            return NO_MATCH;
+        }
+
+        String type = types[index];
+        if (type.length() != underscore - from - 1) {
+            return NO_MATCH;
+        }
+        for (int k = 0; k < type.length(); k++) {
+            if (text.charAt(from + 1 + k) != type.charAt(k)) {
+                return NO_MATCH;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * True if every placeholder-shaped token in {@code text}, such as {@code [EMAIL_3]}, is one of this
+     * table's, so unmasking leaves none of them behind.
+     */
+    boolean resolvesAll(String text) {
+        for (int i = text.indexOf('['); i >= 0; i = text.indexOf('[', i + 1)) {
+            if (looksLikePlaceholder(text, i) && placeholderAt(text, i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // [TYPE_n] for any type and number, whether or not this table has it
+    private static boolean looksLikePlaceholder(String text, int from) {
+        int limit = Math.min(text.length(), from + 64);
+        int i = from + 1;
+        int underscore = -1;
+        while (i < limit && isPlaceholderChar(text.charAt(i))) {
+            if (text.charAt(i) == '_') {
+                underscore = i;
+            }
+            i++;
+        }
+        if (i == limit || text.charAt(i) != ']' || underscore <= from + 1 || underscore == i - 1) {
+            return false;
+        }
+        for (int k = underscore + 1; k < i; k++) {
+            if (text.charAt(k) < '0' || text.charAt(k) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlaceholderChar(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static int stringSize(int n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,167 @@
+package com.email.email.writer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded LRU cache of masked LLM replies.
+ * Keys are hashes of the masked email, tone and prompt template version, and values are
+ * masked replies, so no original PII is ever stored here. Entries are evicted by count,
+ * by approximate heap footprint and by age.
+ */
+@Component
+public class ReplyCache {
+
+    // Object headers, the map entry, the key string and the Entry record
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    // Access-ordered, so iteration starts at the least recently used entry.
+    // Guarded by a ReentrantLock rather than synchronized so virtual threads don't pin.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private record Entry(String maskedReply, long expiresAtNanos, long weight) {}
+
+    @Autowired
+    public ReplyCache(@Value("${email.reply-cache.max-entries:10000}") int maxEntries,
+                      @Value("${email.reply-cache.max-size:64MB}") DataSize maxSize,
+                      @Value("${email.reply-cache.ttl:10m}") Duration ttl,
+                      MeterRegistry meterRegistry) {
+        this(maxEntries, maxSize, ttl, meterRegistry, System::nanoTime);
+    }
+
+    ReplyCache(int maxEntries, DataSize maxSize, Duration ttl, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxSize.toBytes();
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+
+        FunctionCounter.builder("email.reply.cache.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("email.reply.cache.misses", misses, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("email.reply.cache.evictions", evictions, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("email.reply.cache.size", this, ReplyCache::size).register(meterRegistry);
+        Gauge.builder("email.reply.cache.bytes", this, ReplyCache::usedBytes).register(meterRegistry);
+    }
+
+    /**
+     * Builds the cache key. The masked text is hashed so keys stay small for long threads.
+     */
+    public static String key(String maskedText, String tone, int promptTemplateVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Integer.toString(promptTemplateVersion).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((tone == null ? "" : tone).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update((maskedText == null ? "" : maskedText).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached masked reply, or null on a miss or an expired entry.
+     */
+    public String get(String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtNanos() - nanoClock.getAsLong() <= 0) {
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.maskedReply();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(String key, String maskedReply) {
+        long weight = ENTRY_OVERHEAD_BYTES + 2L * (key.length() + maskedReply.length());
+        if (weight > maxBytes) {
+            return; // would evict everything else and still not fit
+        }
+        Entry entry = new Entry(maskedReply, nanoClock.getAsLong() + ttlNanos, weight);
+
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                usedBytes -= previous.weight();
+            }
+            usedBytes += weight;
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. Expired entries are dropped lazily by get(); here only the
+    // least recently used ones are evicted until both bounds hold again.
+    private void evictIfNeeded() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || usedBytes > maxBytes) && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            usedBytes -= entry.weight();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        usedBytes -= entry.weight();
+        evictions.increment();
+    }
+}
@@ -0,0 +1,79 @@
+package com.email.email.writer.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight for LLM calls: while a call for a key is in flight, identical requests
+ * subscribe to it instead of starting their own. Keys are {@link ReplyCache} keys, so only
+ * masked replies are shared and every caller still unmasks with its own replacements.
+ */
+@Component
+public class ReplyCoalescer {
+
+    // Every call for one key produces the same type, which is what makes the casts below safe
+    private final ConcurrentHashMap<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+
+    public ReplyCoalescer(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("email.reply.coalesce.leaders", leaders, LongAdder::sum)
+                .description("Requests that made the upstream call")
+                .register(meterRegistry);
+        FunctionCounter.builder("email.reply.coalesce.followers", followers, LongAdder::sum)
+                .description("Requests served by an identical call already in flight")
+                .register(meterRegistry);
+        Gauge.builder("email.reply.coalesce.inflight", inFlight, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the in-flight call for {@code key}, or starts {@code upstream} and shares it.
+     * The shared call is cancelled once its last subscriber goes away, so a call nobody waits for
+     * any more leaves the LLM queue. A subscriber that arrives just after that starts it again.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> coalesce(String key, Supplier<Mono<T>> upstream) {
+        return Mono.defer(() -> {
+            Mono<T> existing = (Mono<T>) inFlight.get(key);
+            if (existing != null) {
+                followers.increment();
+                return existing;
+            }
+            AtomicReference<Mono<T>> created = new AtomicReference<>();
+            Mono<T> shared = (Mono<T>) inFlight.computeIfAbsent(key, k -> {
+                Mono<T> call = upstream.get()
+                        .doFinally(signal -> inFlight.remove(k, created.get()))
+                        .flux()
+                        .publish()
+                        .refCount()
+                        .singleOrEmpty();
+                created.set(call);
+                return call;
+            });
+            if (shared == created.get()) {
+                leaders.increment();
+            } else {
+                followers.increment();
+            }
+            return shared;
+        });
+    }
+
+    public long leaders() {
+        return leaders.sum();
+    }
+
+    public long followers() {
+        return followers.sum();
+    }
+}
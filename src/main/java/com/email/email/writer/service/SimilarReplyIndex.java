@@ -0,0 +1,331 @@
+package com.email.email.writer.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Finds a recent masked reply for an email that is nearly the same as an earlier one, such as a
+ * templated notification with a different order number. The exact-match ReplyCache misses these.
+ * <p>
+ * Each masked email gets a 64-bit SimHash over its word pairs. Placeholders count by type only and
+ * digit runs as one symbol, so different PII and numbers don't change the fingerprint. Two emails match
+ * when the tone is the same and at most {@code email.similar-reply.max-distance} bits differ.
+ * The fingerprint is split into four 16-bit bands, each indexing a bucket table. Any two fingerprints
+ * within 3 bits agree on at least one band, so up to that distance no match is missed.
+ * <p>
+ * Entries live in fixed primitive arrays and are overwritten oldest first. A reply is only reused if
+ * every placeholder in it exists in the new email's replacement table, so it unmasks completely.
+ * <p>
+ * A reply can repeat names, amounts or order numbers from its email in plain text, so entries are
+ * only reused for the user whose email produced them. The user is folded into the fingerprint, which
+ * keeps other users' entries at a large distance and out of each other's buckets.
+ */
+@Component
+public class SimilarReplyIndex {
+
+    static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final int BUCKETS = 1 << BAND_BITS;
+    // Too few words and unrelated short emails start to look alike
+    static final int MIN_TOKENS = 8;
+    private static final int MAX_CHAIN = 64;
+    private static final int NONE = -1;
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int maxDistance;
+    private final long maxAgeNanos;
+    private final double sampleRate;
+
+    // One slot per entry; next[band][slot] chains the slots of one bucket, heads[band][bucket] starts it
+    private final long[] fingerprints;
+    private final long[] addedAtNanos;
+    private final String[] users;
+    private final String[] tones;
+    private final String[] replies;
+    private final int[][] next;
+    private final int[][] heads;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int writeSlot;
+    private int size;
+    private long replyChars;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter unresolved;
+    private final DistributionSummary sampleDistance;
+
+    public SimilarReplyIndex(@Value("${email.similar-reply.enabled:false}") boolean enabled,
+                             @Value("${email.similar-reply.capacity:10000}") int capacity,
+                             @Value("${email.similar-reply.max-distance:3}") int maxDistance,
+                             @Value("${email.similar-reply.max-age:10m}") Duration maxAge,
+                             @Value("${email.similar-reply.sample-rate:0.01}") double sampleRate,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.capacity = enabled ? Math.max(1, capacity) : 0;
+        this.maxDistance = maxDistance;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.sampleRate = sampleRate;
+        this.fingerprints = new long[this.capacity];
+        this.addedAtNanos = new long[this.capacity];
+        this.users = new String[this.capacity];
+        this.tones = new String[this.capacity];
+        this.replies = new String[this.capacity];
+        this.next = new int[BANDS][this.capacity];
+        this.heads = new int[BANDS][enabled ? BUCKETS : 0];
+        for (int[] bucketHeads : heads) {
+            Arrays.fill(bucketHeads, NONE);
+        }
+
+        this.hits = lookupCounter("hit", meterRegistry);
+        this.misses = lookupCounter("miss", meterRegistry);
+        this.unresolved = lookupCounter("unresolved", meterRegistry);
+        this.sampleDistance = DistributionSummary.builder("email.similar-reply.sample.distance")
+                .description("Fingerprint bits that differ between a reusable reply and a fresh one for the same email")
+                .baseUnit("bits")
+                .register(meterRegistry);
+        Gauge.builder("email.similar-reply.index.size", this, SimilarReplyIndex::size)
+                .description("Replies in the near-duplicate index")
+                .register(meterRegistry);
+        Gauge.builder("email.similar-reply.index.memory", this, SimilarReplyIndex::memoryBytes)
+                .description("Approximate heap used by the near-duplicate index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("email.similar-reply.lookups")
+                .description("Near-duplicate lookups after an exact cache miss; unresolved = match with placeholders the email lacks")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the masked reply of the closest recent email of {@code user} with the same tone, or null if
+     * there is none or its reply uses placeholders that {@code replacements} cannot fill.
+     */
+    public String find(String user, String maskedText, String tone, ReplacementTable replacements) {
+        if (!enabled) {
+            return null;
+        }
+        long fingerprint = fingerprint(maskedText);
+        String reply = fingerprint != 0 ? closest(scoped(fingerprint, user), user, tone) : null;
+        if (reply == null) {
+            misses.increment();
+            return null;
+        }
+        if (!replacements.resolvesAll(reply)) {
+            unresolved.increment();
+            return null;
+        }
+        hits.increment();
+        return reply;
+    }
+
+    private String closest(long fingerprint, String user, String tone) {
+        lock.readLock().lock();
+        try {
+            long now = System.nanoTime();
+            int best = NONE;
+            int bestDistance = maxDistance + 1;
+            for (int band = 0; band < BANDS && bestDistance > 0; band++) {
+                int steps = 0;
+                for (int slot = heads[band][band(fingerprint, band)]; slot != NONE && steps < MAX_CHAIN;
+                        slot = next[band][slot], steps++) {
+                    int distance = Long.bitCount(fingerprint ^ fingerprints[slot]);
+                    if (distance < bestDistance && now - addedAtNanos[slot] <= maxAgeNanos
+                            && Objects.equals(tones[slot], tone) && Objects.equals(users[slot], user)) {
+                        best = slot;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            return best != NONE ? replies[best] : null;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a freshly generated masked reply to {@code user}'s email; the oldest entry makes room when
+     * the index is full.
+     */
+    public void remember(String user, String maskedText, String tone, String maskedReply) {
+        if (!enabled || maskedReply == null) {
+            return;
+        }
+        long fingerprint = fingerprint(maskedText);
+        if (fingerprint == 0) {
+            return;
+        }
+        fingerprint = scoped(fingerprint, user);
+        lock.writeLock().lock();
+        try {
+            int slot = writeSlot;
+            writeSlot = (slot + 1) % capacity;
+            if (replies[slot] != null) {
+                unlink(slot);
+                replyChars -= replies[slot].length();
+            }
+            else {
+                size++;
+            }
+            fingerprints[slot] = fingerprint;
+            addedAtNanos[slot] = System.nanoTime();
+            users[slot] = user;
+            tones[slot] = tone;
+            replies[slot] = maskedReply;
+            replyChars += maskedReply.length();
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = band(fingerprint, band);
+                next[band][slot] = heads[band][bucket];
+                heads[band][bucket] = slot;
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unlink(int slot) {
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = band(fingerprints[slot], band);
+            if (heads[band][bucket] == slot) {
+                heads[band][bucket] = next[band][slot];
+                continue;
+            }
+            for (int previous = heads[band][bucket]; previous != NONE; previous = next[band][previous]) {
+                if (next[band][previous] == slot) {
+                    next[band][previous] = next[band][slot];
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether this hit should be generated anyway, to measure how far reused replies drift from fresh ones.
+     */
+    public boolean sampleHit() {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    public void recordSample(String reusableReply, String freshReply) {
+        long reusable = fingerprint(reusableReply);
+        long fresh = fingerprint(freshReply);
+        if (reusable != 0 && fresh != 0) {
+            sampleDistance.record(Long.bitCount(reusable ^ fresh));
+        }
+    }
+
+    // XOR with a per-user mask keeps the distances between one user's fingerprints
+    private static long scoped(long fingerprint, String user) {
+        return fingerprint ^ mix(Objects.hashCode(user) * 0x9e3779b97f4a7c15L);
+    }
+
+    private static int band(long fingerprint, int band) {
+        return (int) (fingerprint >>> (band * BAND_BITS)) & (BUCKETS - 1);
+    }
+
+    /**
+     * SimHash over adjacent word pairs; 0 when the text has fewer than {@link #MIN_TOKENS} words.
+     * Words are lowercased runs of letters, digits and '_', with each run of digits read as one '#'.
+     */
+    static long fingerprint(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        int tokens = 0;
+        long previous = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            if (!isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            long hash = 0xcbf29ce484222325L; // FNV-1a
+            boolean inDigits = false;
+            while (i < length && isWordChar(text.charAt(i))) {
+                char c = text.charAt(i++);
+                boolean digit = Character.isDigit(c);
+                if (digit && inDigits) {
+                    continue;
+                }
+                inDigits = digit;
+                hash = (hash ^ (digit ? '#' : Character.toLowerCase(c))) * 0x100000001b3L;
+            }
+            if (tokens++ > 0) {
+                long feature = mix(previous * 31 + hash);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += ((feature >>> bit) & 1) != 0 ? 1 : -1;
+                }
+            }
+            previous = hash;
+        }
+        if (tokens < MIN_TOKENS) {
+            return 0;
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // MurmurHash3 finalizer, so similar pairs get unrelated bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The arrays, plus the reply strings at two bytes per char and a String header each
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long slots = (long) capacity * (8 + 8 + 4 + 4 + 4 + 4 * BANDS);
+            long buckets = (long) BANDS * heads[0].length * 4;
+            return slots + buckets + 2 * replyChars + 40L * size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.email.email.writer.service;
+
+/**
+ * Restores placeholders in a reply that arrives in chunks.
+ * A placeholder can be split across two chunks, so a trailing '[' that could still turn into
+ * one is held back until the next chunk (or {@link #flush()}) decides it.
+ * One instance serves one stream and is not thread-safe.
+ */
+public class StreamingUnmasker {
+
+    private final ReplacementTable replacements;
+    private final StringBuilder pending = new StringBuilder();
+
+    StreamingUnmasker(ReplacementTable replacements) {
+        this.replacements = replacements;
+    }
+
+    /**
+     * Accepts the next chunk and returns the text that is safe to emit now.
+     */
+    public String feed(String chunk) {
+        if (chunk != null) {
+            pending.append(chunk);
+        }
+        return drain(false);
+    }
+
+    /**
+     * Returns whatever is still held back once the stream has ended.
+     */
+    public String flush() {
+        return drain(true);
+    }
+
+    private String drain(boolean last) {
+        if (replacements == null || replacements.size() == 0) {
+            String out = pending.toString();
+            pending.setLength(0);
+            return out;
+        }
+
+        StringBuilder out = new StringBuilder(pending.length());
+        int copied = 0;
+        int i = pending.indexOf("[");
+        while (i >= 0) {
+            int index = replacements.placeholderAt(pending, i);
+            if (index >= 0) {
+                out.append(pending, copied, i).append(replacements.original(index));
+                copied = i + replacements.placeholderLength(index);
+                i = pending.indexOf("[", copied);
+            } else if (index == ReplacementTable.INCOMPLETE && !last) {
+                break; // wait for the next chunk
+            } else {
+                i = pending.indexOf("[", i + 1);
+            }
+        }
+        int emitUpTo = i >= 0 ? i : pending.length();
+        out.append(pending, copied, emitUpTo);
+        pending.delete(0, emitUpTo);
+        return out.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.email.email.writer.service;
+
+import org.springframework.stereotype.Component;
+
+import com.email.email.writer.model.User;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * JPA listener on {@link User} that evicts the user's cached principal whenever the row
+ * changes through the entity manager (password rehash, account state, deletion).
+ * Bulk JPQL/SQL updates bypass entity listeners and must call PrincipalCache.invalidate themselves.
+ */
+@Component
+public class UserCacheInvalidationListener {
+
+    private final PrincipalCache principalCache;
+
+    public UserCacheInvalidationListener(PrincipalCache principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void userChanged(User user) {
+        principalCache.invalidate(user.getUsername());
+    }
+}
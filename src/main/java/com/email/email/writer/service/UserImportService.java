@@ -0,0 +1,423 @@
+package com.email.email.writer.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.email.email.writer.dto.UserImportReport;
+import com.email.email.writer.dto.UserImportRow;
+import com.email.email.writer.model.User;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/**
+ * Creates many users from a CSV or JSON stream. Rows are read one at a time and handled in chunks
+ * of {@code admin.import.batch-size}: one query checks the whole chunk against existing usernames
+ * and emails, BCrypt runs on {@code admin.import.hash-threads} threads of its own, and the users are
+ * written with one JDBC batch insert. A bad row is reported and skipped; it never fails the import.
+ * <p>
+ * Only one import runs at a time.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    // Ids come from the entity's sequence, so JPA signups and imported users never collide
+    private static final String INSERT_USER =
+            "INSERT INTO users (id, username, password, email) VALUES (nextval('users_id_seq'), ?, ?, ?)";
+
+    private static final String FIND_TAKEN =
+            "SELECT username, email FROM users WHERE username IN (:usernames) OR email IN (:emails)";
+
+    private static final String COUNT_USERNAME = "SELECT COUNT(*) FROM users WHERE username = ?";
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordHashingService passwordHashing;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int hashThreads;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter importedRows;
+    private final Counter failedRows;
+
+    public UserImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             PasswordHashingService passwordHashing, Validator validator, ObjectMapper objectMapper,
+                             @Value("${admin.import.batch-size:500}") int batchSize,
+                             @Value("${admin.import.hash-threads:4}") int hashThreads,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.passwordHashing = passwordHashing;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.hashThreads = hashThreads;
+        this.importedRows = Counter.builder("users.import.rows").tag("result", "imported").register(meterRegistry);
+        this.failedRows = Counter.builder("users.import.rows").tag("result", "failed").register(meterRegistry);
+    }
+
+    /**
+     * CSV with a header line naming the columns username, email and password, in any order.
+     * Fields may be quoted with double quotes; a quoted field cannot span lines.
+     */
+    public UserImportReport importCsv(InputStream body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("The CSV is empty.");
+        }
+        return importRows(new CsvRows(reader, CsvRows.columns(header)));
+    }
+
+    /**
+     * A JSON array of {"username", "email", "password"} objects, read one element at a time.
+     */
+    public UserImportReport importJson(InputStream body) throws IOException {
+        JsonParser parser;
+        try {
+            parser = objectMapper.createParser(body);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("The JSON body must be an array of users.");
+            }
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("The JSON body must be an array of users: " + e.getOriginalMessage());
+        }
+        // Positioned inside the array, the iterator reads its elements and stops at the closing bracket
+        parser.clearCurrentToken();
+        try (MappingIterator<UserImportRow> rows = objectMapper.readerFor(UserImportRow.class).readValues(parser)) {
+            return importRows(rows);
+        }
+    }
+
+    private UserImportReport importRows(Iterator<UserImportRow> rows) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another user import is already running.");
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService hashPool = Executors.newFixedThreadPool(hashThreads,
+                task -> new Thread(task, "user-import-hash-" + threadCount.incrementAndGet()));
+        try {
+            UserImportReport report = new UserImportReport();
+            long start = System.nanoTime();
+            Map<String, Integer> seenUsernames = new HashMap<>();
+            Map<String, Integer> seenEmails = new HashMap<>();
+            List<PendingUser> chunk = new ArrayList<>(batchSize);
+
+            int rowNumber = 0;
+            while (true) {
+                UserImportRow row;
+                try {
+                    if (!rows.hasNext()) {
+                        break;
+                    }
+                    row = rows.next();
+                }
+                catch (RuntimeException e) {
+                    // The rest of the stream can't be trusted once its structure is broken
+                    fail(report, rowNumber + 1, null, "Unreadable input, import stopped here: " + e.getMessage());
+                    break;
+                }
+                rowNumber++;
+                report.setReceived(rowNumber);
+
+                String error = validate(row, rowNumber, seenUsernames, seenEmails);
+                if (error != null) {
+                    fail(report, rowNumber, row.getUsername(), error);
+                    continue;
+                }
+                chunk.add(new PendingUser(rowNumber, row));
+                if (chunk.size() == batchSize) {
+                    importChunk(chunk, hashPool, report);
+                    chunk.clear();
+                    logProgress(report, start);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, hashPool, report);
+            }
+
+            long elapsedNanos = System.nanoTime() - start;
+            report.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            report.setRowsPerSecond(rowNumber * 1e9 / Math.max(1, elapsedNanos));
+            logger.info("User import finished: {} rows, {} imported, {} failed, {} rows/s",
+                    report.getReceived(), report.getImported(), report.getFailed(), Math.round(report.getRowsPerSecond()));
+            return report;
+        }
+        finally {
+            hashPool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    // Same rules as signup, plus uniqueness within the file itself
+    private String validate(UserImportRow row, int rowNumber, Map<String, Integer> seenUsernames,
+                            Map<String, Integer> seenEmails) {
+        if (row.getUsername() == null || row.getUsername().isBlank()) {
+            return "username must not be blank";
+        }
+        if (row.getPassword() == null) {
+            return "password must not be blank";
+        }
+        User user = new User(row.getUsername(), row.getPassword());
+        user.setEmail(row.getEmail());
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<User> first = violations.iterator().next();
+            return first.getPropertyPath() + " " + first.getMessage();
+        }
+        String error = UserService.signupRuleViolation(row.getEmail(), row.getPassword());
+        if (error != null) {
+            return error;
+        }
+
+        Integer earlier = seenUsernames.putIfAbsent(row.getUsername(), rowNumber);
+        if (earlier != null) {
+            return "Username already used in row " + earlier;
+        }
+        earlier = seenEmails.putIfAbsent(row.getEmail(), rowNumber);
+        if (earlier != null) {
+            seenUsernames.remove(row.getUsername());
+            return "Email already used in row " + earlier;
+        }
+        return null;
+    }
+
+    private void importChunk(List<PendingUser> chunk, ExecutorService hashPool, UserImportReport report) {
+        List<PendingUser> fresh = withoutExistingUsers(chunk, report);
+
+        List<CompletableFuture<String>> hashes = new ArrayList<>(fresh.size());
+        for (PendingUser user : fresh) {
+            hashes.add(CompletableFuture.supplyAsync(() -> passwordHashing.encodeOnCaller(user.row.getPassword()), hashPool));
+        }
+        for (int i = 0; i < fresh.size(); i++) {
+            fresh.get(i).hash = hashes.get(i).join();
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_USER, fresh, fresh.size(),
+                    (statement, user) -> {
+                        statement.setString(1, user.row.getUsername());
+                        statement.setString(2, user.hash);
+                        statement.setString(3, user.row.getEmail());
+                    }));
+            report.setImported(report.getImported() + fresh.size());
+            importedRows.increment(fresh.size());
+        }
+        catch (DuplicateKeyException e) {
+            // Someone signed up with one of these names since the check; find the row one insert at a time
+            for (PendingUser user : fresh) {
+                try {
+                    jdbcTemplate.update(INSERT_USER, user.row.getUsername(), user.hash, user.row.getEmail());
+                    report.setImported(report.getImported() + 1);
+                    importedRows.increment();
+                }
+                catch (DuplicateKeyException duplicate) {
+                    // Constraint names differ per database, so ask which value is taken now
+                    Integer sameUsername = jdbcTemplate.queryForObject(COUNT_USERNAME, Integer.class, user.row.getUsername());
+                    fail(report, user.rowNumber, user.row.getUsername(),
+                            sameUsername != null && sameUsername > 0 ? "Username already exists" : "Email already exists");
+                }
+            }
+        }
+    }
+
+    // One query for the whole chunk instead of two SELECTs per user
+    private List<PendingUser> withoutExistingUsers(List<PendingUser> chunk, UserImportReport report) {
+        List<String> usernames = new ArrayList<>(chunk.size());
+        List<String> emails = new ArrayList<>(chunk.size());
+        for (PendingUser user : chunk) {
+            usernames.add(user.row.getUsername());
+            emails.add(user.row.getEmail());
+        }
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        namedJdbcTemplate.query(FIND_TAKEN,
+                new MapSqlParameterSource("usernames", usernames).addValue("emails", emails),
+                resultSet -> {
+                    takenUsernames.add(resultSet.getString(1));
+                    takenEmails.add(resultSet.getString(2));
+                });
+
+        List<PendingUser> fresh = new ArrayList<>(chunk.size());
+        for (PendingUser user : chunk) {
+            if (takenUsernames.contains(user.row.getUsername())) {
+                fail(report, user.rowNumber, user.row.getUsername(), "Username already exists");
+            } else if (takenEmails.contains(user.row.getEmail())) {
+                fail(report, user.rowNumber, user.row.getUsername(), "Email already exists");
+            } else {
+                fresh.add(user);
+            }
+        }
+        return fresh;
+    }
+
+    private void fail(UserImportReport report, int rowNumber, String username, String message) {
+        report.setFailed(report.getFailed() + 1);
+        failedRows.increment();
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new UserImportReport.RowError(rowNumber, username, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static void logProgress(UserImportReport report, long start) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        logger.info("User import: {} rows read, {} imported, {} rows/s", report.getReceived(), report.getImported(),
+                Math.round(report.getReceived() * 1e9 / elapsedNanos));
+    }
+
+    // A valid row waiting for its chunk; hash is filled in by the hashing threads' results
+    private static final class PendingUser {
+
+        final int rowNumber;
+        final UserImportRow row;
+        String hash;
+
+        PendingUser(int rowNumber, UserImportRow row) {
+            this.rowNumber = rowNumber;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Reads CSV data lines lazily. Blank lines are skipped.
+     */
+    static final class CsvRows implements Iterator<UserImportRow> {
+
+        private final BufferedReader reader;
+        private final int[] columns;
+        private String nextLine;
+
+        CsvRows(BufferedReader reader, int[] columns) {
+            this.reader = reader;
+            this.columns = columns;
+        }
+
+        // Positions of username, email and password in the header
+        static int[] columns(String header) {
+            List<String> names = parseLine(header.startsWith("\uFEFF") ? header.substring(1) : header);
+            int[] columns = new int[3];
+            String[] required = { "username", "email", "password" };
+            for (int i = 0; i < required.length; i++) {
+                columns[i] = -1;
+                for (int j = 0; j < names.size(); j++) {
+                    if (names.get(j).trim().equalsIgnoreCase(required[i])) {
+                        columns[i] = j;
+                    }
+                }
+                if (columns[i] < 0) {
+                    throw new IllegalArgumentException("The CSV header must name the columns username, email and password.");
+                }
+            }
+            return columns;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (nextLine == null) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    if (!line.isBlank()) {
+                        nextLine = line;
+                    }
+                }
+                return true;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public UserImportRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> fields = parseLine(nextLine);
+            nextLine = null;
+            return new UserImportRow(field(fields, columns[0]), field(fields, columns[1]), field(fields, columns[2]));
+        }
+
+        private static String field(List<String> fields, int column) {
+            return column < fields.size() ? fields.get(column) : null;
+        }
+
+        // Comma separated; a field in double quotes may contain commas and "" for a quote
+        static List<String> parseLine(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -4,17 +4,19 @@ import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.email.email.writer.model.User;
 import com.email.email.writer.repo.UserRepository;
 
 
 @Service
-public class UserService implements UserDetailsService{
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     private UserRepository userRepository;
@@ -22,25 +24,18 @@ public class UserService implements UserDetailsService{
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
     public User registerUser(User user) {
-        // Corrected username check
-        if (userRepository.findByUsername(user.getUsername()).isPresent()) {
+        // One query for both unique columns instead of a SELECT per column
+        if (userRepository.existsByUsernameOrEmail(user.getUsername(), user.getEmail())) {
             throw new IllegalArgumentException("Username already exists");
         }
-        
-        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
-            throw new IllegalArgumentException("Username already exists");
-        }
-        
-        String email = user.getEmail();
-        if (!email.endsWith("@gmail.com") && !email.endsWith("@yahoo.com")) {
-            throw new IllegalArgumentException("Only gmail.com or yahoo.com emails are allowed.");
-        }
-
 
-        // Password length validation
-        if (user.getPassword().length() < 6) {
-            throw new IllegalArgumentException("Password must be at least 6 characters");
+        String error = signupRuleViolation(user.getEmail(), user.getPassword());
+        if (error != null) {
+            throw new IllegalArgumentException(error);
         }
 
         // Encode password before saving
@@ -50,6 +45,22 @@ public class UserService implements UserDetailsService{
         return userRepository.save(user);
     }
 
+    /**
+     * The signup rules beyond the bean validation on {@link User}, shared with the bulk import.
+     * Returns the message for the first rule the user breaks, or null.
+     */
+    static String signupRuleViolation(String email, String password) {
+        if (!email.endsWith("@gmail.com") && !email.endsWith("@yahoo.com")) {
+            return "Only gmail.com or yahoo.com emails are allowed.";
+        }
+
+        // Password length validation
+        if (password.length() < 6) {
+            return "Password must be at least 6 characters";
+        }
+        return null;
+    }
+
     public Optional<User> findByUsername(String username) {
         return userRepository.findByUsername(username);
     }
@@ -60,4 +71,25 @@ public class UserService implements UserDetailsService{
 		return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Principal for an already authenticated request (valid JWT), served from PrincipalCache
+	 * when possible. Login must keep using loadUserByUsername, which returns the password hash.
+	 */
+	public UserDetails loadPrincipal(String username) throws UsernameNotFoundException {
+		return principalCache.get(username, this::loadUserByUsername);
+	}
+
+	/**
+	 * Called by Spring Security after a successful login whose stored hash uses a different
+	 * BCrypt cost than security.bcrypt.strength. Saving the entity also evicts the cached principal.
+	 */
+	@Override
+	@Transactional
+	public UserDetails updatePassword(UserDetails user, String newPassword) {
+		User stored = userRepository.findByUsername(user.getUsername())
+				.orElseThrow(() -> new UsernameNotFoundException("User not found"));
+		stored.setPassword(newPassword);
+		return userRepository.save(stored);
+	}
+}
@@ -0,0 +1,45 @@
+package com.email.email.writer.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+// Metrics export is off in tests unless asked for
+@AutoConfigureObservability(tracing = false)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ActuatorPortTests {
+
+	@LocalServerPort
+	private int port;
+
+	@LocalManagementPort
+	private int managementPort;
+
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+
+	@Test
+	void scrapeEndpointIsOnlyOnTheManagementPort() throws Exception {
+		assertThat(managementPort).isNotEqualTo(port);
+
+		HttpResponse<String> scrape = get(managementPort, "/actuator/prometheus");
+		assertThat(scrape.statusCode()).isEqualTo(200);
+		assertThat(scrape.body()).contains("jvm_memory_used_bytes");
+
+		assertThat(get(port, "/actuator/prometheus").statusCode()).isIn(401, 404);
+		assertThat(get(port, "/actuator/health").statusCode()).isIn(401, 404);
+	}
+
+	private HttpResponse<String> get(int port, String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+		return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+}
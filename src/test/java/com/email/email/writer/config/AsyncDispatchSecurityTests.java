@@ -0,0 +1,105 @@
+package com.email.email.writer.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.email.email.writer.jwt.JwtUtils;
+import com.email.email.writer.model.User;
+import com.email.email.writer.repo.UserRepository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs on a real server: MockMvc does not repeat the security filter chain the way the container's
+ * ASYNC and ERROR dispatches do.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AsyncDispatchSecurityTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtUtils jwtUtils;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+	private User user;
+
+	@TestConfiguration
+	static class AsyncEndpoints {
+
+		@Bean
+		AsyncController asyncController() {
+			return new AsyncController();
+		}
+	}
+
+	@RestController
+	static class AsyncController {
+
+		@GetMapping("/api/test/async")
+		Mono<String> reply() {
+			return Mono.just("done").delayElement(Duration.ofMillis(50));
+		}
+
+		@GetMapping("/api/test/async-error")
+		Mono<String> fail() {
+			return Mono.<String>error(new ResponseStatusException(HttpStatus.CONFLICT)).delaySubscription(Duration.ofMillis(50));
+		}
+	}
+
+	@BeforeEach
+	void createUser() {
+		user = userRepository.findByUsername("async-tester").orElseGet(() -> {
+			User created = new User("async-tester", "not-used");
+			created.setEmail("async-tester@example.com");
+			return userRepository.save(created);
+		});
+	}
+
+	private HttpResponse<String> get(String path, boolean authenticated) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+		if (authenticated) {
+			request.header("Authorization", "Bearer " + jwtUtils.generateTokenFromUsername(user));
+		}
+		return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	@Test
+	void asyncResultIsWrittenAfterTheAsyncDispatch() throws Exception {
+		HttpResponse<String> response = get("/api/test/async", true);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.body()).isEqualTo("done");
+	}
+
+	@Test
+	void asyncErrorKeepsItsStatusThroughTheErrorDispatch() throws Exception {
+		assertThat(get("/api/test/async-error", true).statusCode()).isEqualTo(409);
+	}
+
+	@Test
+	void originalRequestStillNeedsAToken() throws Exception {
+		assertThat(get("/api/test/async", false).statusCode()).isEqualTo(401);
+	}
+}
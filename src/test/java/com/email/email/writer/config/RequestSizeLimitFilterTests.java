@@ -0,0 +1,105 @@
+package com.email.email.writer.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.email.email.writer.jwt.JwtUtils;
+import com.email.email.writer.model.User;
+import com.email.email.writer.repo.UserRepository;
+
+/**
+ * MockMvc always declares a Content-Length and does not run the ERROR dispatch, so the chunked
+ * case goes through the real server.
+ */
+@AutoConfigureMockMvc
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "app.max-request-size=1KB", "app.admin.usernames=size-tester" })
+class RequestSizeLimitFilterTests {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtUtils jwtUtils;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private String token;
+
+	@BeforeEach
+	void createUser() {
+		User user = userRepository.findByUsername("size-tester").orElseGet(() -> {
+			User created = new User("size-tester", "not-used");
+			created.setEmail("size-tester@example.com");
+			return userRepository.save(created);
+		});
+		token = "Bearer " + jwtUtils.generateTokenFromUsername(user);
+	}
+
+	@Test
+	void declaredLengthOverTheLimitIsRefusedBeforeReading() throws Exception {
+		mockMvc.perform(post("/api/email/generate")
+						.header("Authorization", token)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(email(2000)))
+				.andExpect(status().isPayloadTooLarge())
+				.andExpect(content().string("Request body is larger than 1 KB."));
+	}
+
+	@Test
+	void chunkedBodyOverTheLimitIsCutOffWith413() throws Exception {
+		byte[] body = email(2000).getBytes(StandardCharsets.UTF_8);
+		// A stream publisher has no known length, so the client sends the body chunked
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/email/generate"))
+				.header("Authorization", token)
+				.header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+				.POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body)))
+				.build();
+
+		HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+		assertThat(response.statusCode()).isEqualTo(413);
+	}
+
+	@Test
+	void userImportIsNotLimited() throws Exception {
+		StringBuilder csv = new StringBuilder("username,email,password\n");
+		for (int i = 0; csv.length() <= 2048; i++) {
+			csv.append("user").append(i).append(",not-an-email,secret1\n");
+		}
+
+		mockMvc.perform(post("/api/admin/users/import")
+						.header("Authorization", token)
+						.contentType("text/csv")
+						.content(csv.toString()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.received").value(csv.toString().split("\n").length - 1));
+	}
+
+	private static String email(int length) {
+		return "{\"content\":\"" + "a".repeat(length) + "\",\"tone\":\"formal\"}";
+	}
+}
@@ -0,0 +1,113 @@
+package com.email.email.writer.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.email.email.writer.dto.BatchReplyItem;
+import com.email.email.writer.model.EmailRequest;
+import com.email.email.writer.service.EmailGeneratorService;
+import com.email.email.writer.service.RateLimiterService;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class EmailGeneratorControllerTests {
+
+	private final EmailGeneratorService generatorService = mock(EmailGeneratorService.class);
+	private EmailGeneratorController controller;
+
+	@BeforeEach
+	void setUp() {
+		RateLimiterService rateLimiterService = new RateLimiterService("local", 100, 100, 20, Duration.ofHours(1), 1,
+				unusedProvider(), unusedProvider(), new SimpleMeterRegistry());
+		controller = new EmailGeneratorController(generatorService, rateLimiterService);
+		when(generatorService.getBatchMaxItems()).thenReturn(50);
+		when(generatorService.generateBatch(anyList(), anyBoolean(), anyString())).thenAnswer(invocation -> {
+			List<EmailRequest> requests = invocation.getArgument(0);
+			return Flux.range(0, requests.size()).map(i -> BatchReplyItem.success(i, "reply " + i));
+		});
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken("batch-user", null, Collections.emptyList()));
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void batchLargerThanThePerMinuteLimitIsAccepted() {
+		ResponseEntity<?> response = controller.generateBatch(emails(6)).block();
+
+		assertThat(response.getStatusCode().value()).isEqualTo(200);
+		assertThat((List<?>) response.getBody()).hasSize(6);
+	}
+
+	@Test
+	void batchesTakeFromTheirOwnQuota() {
+		assertThat(controller.generateBatch(emails(12)).block().getStatusCode().value()).isEqualTo(200);
+		assertThat(controller.generateBatch(emails(8)).block().getStatusCode().value()).isEqualTo(200);
+		assertThat(controller.generateBatch(emails(1)).block().getStatusCode().value()).isEqualTo(429);
+	}
+
+	@Test
+	void batchLargerThanTheWholeQuotaNamesTheRealCap() {
+		ResponseEntity<?> response = controller.generateBatch(emails(21)).block();
+
+		assertThat(response.getStatusCode().value()).isEqualTo(400);
+		assertThat(response.getBody()).isEqualTo("A batch must contain between 1 and 20 emails.");
+	}
+
+	@Test
+	void streamReportsAnOpenCircuitBreakerAsAnErrorEvent() {
+		CircuitBreaker breaker = CircuitBreaker.ofDefaults("llm");
+		breaker.transitionToOpenState();
+		when(generatorService.streamEmailReply(any(EmailRequest.class), anyString()))
+				.thenReturn(Flux.error(CallNotPermittedException.createCallNotPermittedException(breaker)));
+
+		ResponseEntity<Flux<ServerSentEvent<String>>> response = controller.streamEmail(emails(1).get(0));
+		List<ServerSentEvent<String>> events = response.getBody().collectList().block();
+
+		assertThat(response.getStatusCode().value()).isEqualTo(200);
+		assertThat(events).singleElement().satisfies(event -> {
+			assertThat(event.event()).isEqualTo("error");
+			assertThat(event.data()).isEqualTo("The AI service is temporarily unavailable. Please try again shortly.");
+		});
+	}
+
+	// The local backend never asks for the JDBC beans
+	@SuppressWarnings("unchecked")
+	private static <T> ObjectProvider<T> unusedProvider() {
+		return mock(ObjectProvider.class);
+	}
+
+	private static List<EmailRequest> emails(int count) {
+		return IntStream.range(0, count).mapToObj(i -> {
+			EmailRequest request = new EmailRequest();
+			request.setContent("Email " + i);
+			request.setTone("formal");
+			return request;
+		}).toList();
+	}
+}
@@ -0,0 +1,92 @@
+package com.email.email.writer.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.email.email.writer.dto.HistoryPage;
+import com.email.email.writer.model.GenerationHistory;
+import com.email.email.writer.repo.GenerationHistoryRepository;
+import com.email.email.writer.service.PrincipalCache;
+
+@DataJpaTest
+class HistoryControllerTests {
+
+	@Autowired
+	private GenerationHistoryRepository historyRepository;
+
+	// Needed by the User entity listener, which this slice loads with the other entities
+	@MockBean
+	private PrincipalCache principalCache;
+
+	private HistoryController controller;
+
+	@BeforeEach
+	void setUp() {
+		controller = new HistoryController(historyRepository);
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken("alice", null, Collections.emptyList()));
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void pagesThroughTheCallersHistoryNewestFirst() {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		// Three entries share a timestamp, so the id has to break the tie between pages
+		List<Long> expected = new ArrayList<>();
+		for (Instant createdAt : List.of(now, now, now, now.minusSeconds(1), now.minusSeconds(2))) {
+			expected.add(historyRepository.save(entry("alice", createdAt)).getId());
+		}
+		historyRepository.save(entry("bob", now));
+		List<Long> newestFirst = List.of(expected.get(2), expected.get(1), expected.get(0), expected.get(3), expected.get(4));
+
+		List<Long> seen = new ArrayList<>();
+		String before = null;
+		int pages = 0;
+		do {
+			HistoryPage page = (HistoryPage) controller.history(before, 2).getBody();
+			page.getItems().forEach(item -> seen.add(item.getId()));
+			before = page.getNext();
+			pages++;
+		} while (before != null);
+
+		assertThat(seen).containsExactlyElementsOf(newestFirst);
+		assertThat(pages).isEqualTo(3);
+	}
+
+	@Test
+	void rejectsACursorItDidNotIssue() {
+		ResponseEntity<?> response = controller.history("not-a-cursor", 20);
+
+		assertThat(response.getStatusCode().value()).isEqualTo(400);
+	}
+
+	private static GenerationHistory entry(String username, Instant createdAt) {
+		GenerationHistory entry = new GenerationHistory();
+		entry.setUsername(username);
+		entry.setSource("generate");
+		entry.setTone("formal");
+		entry.setMaskedInput("Hi [EMAIL_1]");
+		entry.setMaskedOutput("Hello");
+		entry.setCreatedAt(createdAt);
+		return entry;
+	}
+}
@@ -0,0 +1,92 @@
+package com.email.email.writer.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+class JwtUtilsTests {
+
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+	// On a whole second, since exp is stored in seconds
+	private final AtomicLong now = new AtomicLong(System.currentTimeMillis() / 1000 * 1000);
+	private JwtUtils jwtUtils;
+
+	@BeforeEach
+	void setUp() {
+		jwtUtils = jwtUtils(100);
+	}
+
+	private JwtUtils jwtUtils(int cacheSize) {
+		JwtUtils utils = new JwtUtils(now::get);
+		ReflectionTestUtils.setField(utils, "jwtSecret", Base64.getEncoder().encodeToString(SECRET));
+		ReflectionTestUtils.setField(utils, "jwtExpirationMs", 60_000);
+		ReflectionTestUtils.setField(utils, "verifiedCacheSize", cacheSize);
+		utils.init();
+		return utils;
+	}
+
+	@Test
+	void cachedTokenIsRejectedOnceItExpires() {
+		String token = token(jwtUtils, "alice");
+		assertThat(jwtUtils.getUsernameFromJwtToken(token)).isEqualTo("alice");
+		assertThat(jwtUtils.cachedTokens()).isEqualTo(1);
+
+		now.addAndGet(59_999);
+		assertThat(jwtUtils.validateJwtToken(token)).isTrue();
+
+		now.addAndGet(1);
+		assertThat(jwtUtils.validateJwtToken(token)).isFalse();
+		assertThat(jwtUtils.cachedTokens()).isZero();
+	}
+
+	@Test
+	void tokenWithATamperedSignatureIsNeverCached() {
+		String token = token(jwtUtils, "alice");
+		int signature = token.lastIndexOf('.') + 1;
+		char changed = token.charAt(signature + 5) == 'A' ? 'B' : 'A';
+		String tampered = token.substring(0, signature + 5) + changed + token.substring(signature + 6);
+
+		assertThat(jwtUtils.validateJwtToken(tampered)).isFalse();
+		assertThat(jwtUtils.validateJwtToken(tampered)).isFalse();
+		assertThat(jwtUtils.cachedTokens()).isZero();
+	}
+
+	@Test
+	void tokenWithoutExpIsAcceptedButNotStored() {
+		String token = Jwts.builder().setSubject("alice").signWith(Keys.hmacShaKeyFor(SECRET)).compact();
+
+		assertThat(jwtUtils.getUsernameFromJwtToken(token)).isEqualTo("alice");
+		assertThat(jwtUtils.cachedTokens()).isZero();
+	}
+
+	@Test
+	void fullCacheStoresNewTokensOnlyAfterTheSweepFreesSpace() {
+		JwtUtils utils = jwtUtils(2);
+		utils.validateJwtToken(token(utils, "alice"));
+		utils.validateJwtToken(token(utils, "bob"));
+
+		String carol = token(utils, "carol");
+		assertThat(utils.validateJwtToken(carol)).isTrue();
+		assertThat(utils.cachedTokens()).isEqualTo(2);
+
+		// alice and bob expire, so the next sweep makes room for dave
+		now.addAndGet(60_000);
+		assertThat(utils.validateJwtToken(token(utils, "dave"))).isTrue();
+		assertThat(utils.cachedTokens()).isEqualTo(1);
+	}
+
+	private static String token(JwtUtils utils, String username) {
+		return utils.generateTokenFromUsername(User.withUsername(username).password("").roles("USER").build());
+	}
+}
@@ -0,0 +1,119 @@
+package com.email.email.writer.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class AdaptiveConcurrencyLimiterTests {
+
+	private AdaptiveConcurrencyLimiter limiter(int limit, int maxQueue, Duration queueTimeout) {
+		return new AdaptiveConcurrencyLimiter(limit, 1, 100, 1.5, maxQueue, queueTimeout, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void queuesOverTheLimitAndShedsWhenTheQueueIsFull() {
+		AdaptiveConcurrencyLimiter limiter = limiter(2, 1, Duration.ofSeconds(10));
+		Sinks.One<String> first = Sinks.one();
+		Sinks.One<String> second = Sinks.one();
+		limiter.limit(first.asMono()).subscribe();
+		limiter.limit(second.asMono()).subscribe();
+
+		Mono<String> queued = limiter.limit(Mono.just("third"));
+		StepVerifier.create(queued)
+				.then(() -> {
+					assertThat(limiter.getInFlight()).isEqualTo(2);
+					assertThat(limiter.getQueued()).isEqualTo(1);
+					// Queue is full: the next call is shed at once
+					StepVerifier.create(limiter.limit(Mono.just("fourth")))
+							.expectError(LlmOverloadedException.class)
+							.verify(Duration.ofSeconds(1));
+					first.tryEmitValue("first");
+				})
+				.expectNext("third")
+				.verifyComplete();
+
+		assertThat(limiter.getQueued()).isZero();
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+	}
+
+	@Test
+	void queuedCallGivesUpAfterTheQueueTimeout() {
+		AdaptiveConcurrencyLimiter limiter = limiter(1, 5, Duration.ofMillis(50));
+		limiter.limit(Sinks.<String>one().asMono()).subscribe();
+
+		StepVerifier.create(limiter.limit(Mono.just("late")))
+				.expectErrorSatisfies(error -> assertThat(((LlmOverloadedException) error).getRetryAfter())
+						.isGreaterThanOrEqualTo(Duration.ofSeconds(1)))
+				.verify(Duration.ofSeconds(1));
+		assertThat(limiter.getQueued()).isZero();
+	}
+
+	@Test
+	void interactiveCallsGoFirstAndUsersTakeTurnsByPromptTokens() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1.5, 10, Duration.ofSeconds(10), 10,
+				Duration.ofSeconds(10), 4, 1, 1000, meterRegistry);
+		Sinks.One<String> blocker = Sinks.one();
+		limiter.limit(blocker.asMono()).subscribe();
+
+		List<String> order = new CopyOnWriteArrayList<>();
+		// A long-email batch user queues first, then a short-email batch user, then someone waiting on one reply
+		for (String call : List.of("a1", "a2", "b1", "b2", "b3", "b4")) {
+			int cost = call.startsWith("a") ? 1000 : 250;
+			LlmCaller caller = new LlmCaller(call.substring(0, 1), LlmCaller.Priority.BATCH, cost);
+			limiter.limit(caller, Mono.fromRunnable(() -> order.add(call))).subscribe();
+		}
+		limiter.limit(new LlmCaller("c", LlmCaller.Priority.INTERACTIVE, 100), Mono.fromRunnable(() -> order.add("c1")))
+				.subscribe();
+		assertThat(limiter.getQueued()).isEqualTo(7);
+
+		blocker.tryEmitValue("done");
+
+		// b's four short emails fit in one turn's 1000 tokens, a's long ones take a turn each
+		assertThat(order).containsExactly("c1", "a1", "b1", "b2", "b3", "b4", "a2");
+		assertThat(meterRegistry.get("llm.scheduling.queue.wait").tags("class", "batch", "outcome", "granted")
+				.timer().count()).isEqualTo(6);
+	}
+
+	@Test
+	void cancelledCallLeavesTheQueue() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1.5, 5, Duration.ofSeconds(10),
+				meterRegistry);
+		Sinks.One<String> blocker = Sinks.one();
+		limiter.limit(blocker.asMono()).subscribe();
+
+		Disposable waiting = limiter.limit(Mono.fromRunnable(() -> {
+			throw new AssertionError("cancelled call must not run");
+		})).subscribe();
+		assertThat(limiter.getQueued()).isEqualTo(1);
+
+		waiting.dispose();
+		blocker.tryEmitValue("done");
+
+		assertThat(limiter.getQueued()).isZero();
+		assertThat(limiter.getInFlight()).isZero();
+		assertThat(meterRegistry.get("llm.scheduling.queue.wait").tags("class", "interactive", "outcome", "cancelled")
+				.timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void failedCallsShrinkTheLimit() {
+		AdaptiveConcurrencyLimiter limiter = limiter(20, 5, Duration.ofSeconds(1));
+		for (int i = 0; i < 5; i++) {
+			limiter.limit(Mono.error(new IllegalStateException("upstream error"))).onErrorResume(e -> Mono.empty()).block();
+		}
+		assertThat(limiter.getLimit()).isEqualTo(11); // 20 * 0.9^5
+		assertThat(limiter.getInFlight()).isZero();
+	}
+}
@@ -0,0 +1,67 @@
+package com.email.email.writer.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+class GeminiCodecTests {
+
+	private static final String RESPONSE = """
+			{"candidates":[{"content":{"parts":[{"text":"Dear [NAME_1], thanks \\u2013 \\"noted\\"."},{"text":"second part"}],
+			"role":"model"},"finishReason":"STOP","safetyRatings":[{"category":"HARM","probability":"NEGLIGIBLE"}]},
+			{"content":{"parts":[{"text":"other candidate"}]},"finishReason":"STOP"}],
+			"usageMetadata":{"promptTokenCount":120,"candidatesTokenCount":80,"totalTokenCount":200},
+			"modelVersion":"gemini-2.0-flash"}
+			""";
+
+	@Test
+	void readsFirstPartOfFirstCandidateFromSplitBuffers() {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		GeminiCodec.ResponseDecoder decoder = new GeminiCodec.ResponseDecoder();
+		// One byte at a time, so every token is split across buffers
+		for (int i = 0; i < bytes.length; i++) {
+			decoder.feed(ByteBuffer.wrap(bytes, i, 1));
+		}
+
+		LlmResponse response = decoder.finish();
+
+		assertThat(response.text()).isEqualTo("Dear [NAME_1], thanks \u2013 \"noted\".");
+		assertThat(response.finishReason()).isEqualTo("STOP");
+		assertThat(response.blockReason()).isNull();
+		assertThat(response.usage()).isEqualTo(new LlmResponse.Usage(120, 80, 200));
+		assertThat(GeminiCodec.decode(RESPONSE)).isEqualTo(response);
+	}
+
+	@Test
+	void reportsBlockedPromptsAndMissingText() {
+		LlmResponse blocked = GeminiCodec.decode("{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}");
+		assertThat(blocked.text()).isNull();
+		assertThat(blocked.blockReason()).isEqualTo("SAFETY");
+		assertThat(blocked.usage()).isSameAs(LlmResponse.Usage.NONE);
+
+		LlmResponse refused = GeminiCodec.decode("{\"candidates\":[{\"finishReason\":\"SAFETY\"}]}");
+		assertThat(refused.text()).isNull();
+		assertThat(GeminiCodec.isBlocked(refused.finishReason())).isTrue();
+	}
+
+	@Test
+	void rejectsTruncatedAndMalformedBodies() {
+		byte[] truncated = RESPONSE.substring(0, RESPONSE.length() / 2).getBytes(StandardCharsets.UTF_8);
+		assertThatThrownBy(() -> GeminiCodec.decode(truncated)).isInstanceOf(LlmResponseException.class);
+		assertThatThrownBy(() -> GeminiCodec.decode("<html>Bad gateway</html>")).isInstanceOf(LlmResponseException.class);
+	}
+
+	@Test
+	void writesRequestBody() throws Exception {
+		DataBuffer buffer = GeminiCodec.writeRequest("Reply to \"Bob\"\n\u00e9", DefaultDataBufferFactory.sharedInstance);
+
+		assertThat(buffer.toString(StandardCharsets.UTF_8))
+				.isEqualTo("{\"contents\":[{\"parts\":[{\"text\":\"Reply to \\\"Bob\\\"\\n\u00e9\"}]}]}");
+	}
+}
@@ -0,0 +1,104 @@
+package com.email.email.writer.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class LlmCallPolicyTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final AtomicInteger attempts = new AtomicInteger();
+	private LlmCallPolicy policy;
+
+	@BeforeEach
+	void setUp() {
+		CircuitBreakerConfig breakerConfig = CircuitBreakerConfig.custom()
+				.slidingWindowSize(4)
+				.minimumNumberOfCalls(4)
+				.waitDurationInOpenState(Duration.ofMinutes(1))
+				.build();
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 200, 1.5, 50, Duration.ofSeconds(2),
+				meterRegistry);
+		policy = new LlmCallPolicy(CircuitBreakerRegistry.of(breakerConfig), limiter, 0.95, 100, meterRegistry);
+		ReflectionTestUtils.setField(policy, "deadline", Duration.ofSeconds(2));
+		ReflectionTestUtils.setField(policy, "hedgingEnabled", true);
+		ReflectionTestUtils.setField(policy, "initialHedgeDelay", Duration.ofMillis(100));
+		ReflectionTestUtils.setField(policy, "minHedgeDelay", Duration.ofMillis(10));
+	}
+
+	@Test
+	void slowFirstAttemptIsOvertakenByTheHedge() {
+		String reply = policy.execute(() -> {
+			int attempt = attempts.incrementAndGet();
+			return Mono.delay(Duration.ofMillis(attempt == 1 ? 1500 : 10)).thenReturn("attempt " + attempt);
+		}).block();
+
+		assertThat(reply).isEqualTo("attempt 2");
+		assertThat(meterRegistry.get("llm.hedge.fired").functionCounter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("llm.hedge.won").functionCounter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void fastAnswerSendsNoHedge() {
+		String reply = policy.execute(() -> {
+			attempts.incrementAndGet();
+			return Mono.just("reply");
+		}).block();
+
+		assertThat(reply).isEqualTo("reply");
+		assertThat(attempts.get()).isEqualTo(1);
+		assertThat(meterRegistry.get("llm.hedge.fired").functionCounter().count()).isZero();
+	}
+
+	@Test
+	void fastFailureIsNotHedged() {
+		assertThatThrownBy(() -> policy.execute(() -> {
+			attempts.incrementAndGet();
+			return Mono.<String>error(new IllegalStateException("upstream down"));
+		}).block()).isInstanceOf(IllegalStateException.class).hasMessage("upstream down");
+
+		assertThat(attempts.get()).isEqualTo(1);
+		assertThat(meterRegistry.get("llm.hedge.fired").functionCounter().count()).isZero();
+	}
+
+	@Test
+	void startedHedgeStillAnswersWhenTheFirstAttemptFails() {
+		String reply = policy.execute(() -> {
+			int attempt = attempts.incrementAndGet();
+			return attempt == 1
+					? Mono.delay(Duration.ofMillis(150)).then(Mono.<String>error(new IllegalStateException("upstream down")))
+					: Mono.delay(Duration.ofMillis(300)).thenReturn("attempt " + attempt);
+		}).block();
+
+		assertThat(reply).isEqualTo("attempt 2");
+		assertThat(attempts.get()).isEqualTo(2);
+	}
+
+	@Test
+	void failuresReportTheAttemptErrorAndOpenTheBreaker() {
+		for (int i = 0; i < 4; i++) {
+			assertThatThrownBy(() -> policy.execute(() -> Mono.error(new IllegalStateException("upstream down"))).block())
+					.isInstanceOf(IllegalStateException.class)
+					.hasMessage("upstream down");
+		}
+
+		// Four failed calls open the breaker; the next call is not attempted
+		assertThatThrownBy(() -> policy.execute(() -> {
+			attempts.incrementAndGet();
+			return Mono.just("reply");
+		}).block()).isInstanceOf(CallNotPermittedException.class);
+		assertThat(attempts.get()).isZero();
+	}
+}
@@ -0,0 +1,72 @@
+package com.email.email.writer.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class FixedWindowRateLimiterTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private FixedWindowRateLimiter limiter(int maxKeys) {
+		return new FixedWindowRateLimiter("test", 4, Duration.ofMinutes(1), maxKeys, false, now::get);
+	}
+
+	@Test
+	void allowsTheLimitPerWindowAndRefillsInTheNext() {
+		FixedWindowRateLimiter limiter = limiter(10);
+		for (int i = 0; i < 4; i++) {
+			assertThat(limiter.tryAcquire("alice")).isTrue();
+		}
+		assertThat(limiter.tryAcquire("alice")).isFalse();
+		assertThat(limiter.tryAcquire("bob")).isTrue();
+
+		now.addAndGet(Duration.ofSeconds(59).toNanos());
+		assertThat(limiter.tryAcquire("alice")).isFalse();
+
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(limiter.tryAcquire("alice")).isTrue();
+	}
+
+	@Test
+	void failsClosedWhenFullAndEvictsIdleKeys() {
+		FixedWindowRateLimiter limiter = limiter(2);
+		assertThat(limiter.tryAcquire("a")).isTrue();
+		assertThat(limiter.tryAcquire("b")).isTrue();
+		assertThat(limiter.tryAcquire("c")).isFalse();
+		assertThat(limiter.trackedKeys()).isEqualTo(2);
+
+		// Once a and b have nothing used in their current window they can be dropped
+		now.addAndGet(Duration.ofMinutes(2).toNanos());
+		assertThat(limiter.tryAcquire("c")).isTrue();
+		assertThat(limiter.trackedKeys()).isEqualTo(1);
+	}
+
+	@Test
+	void keepsLimitingNewKeysOnceTheStoreIsFull() {
+		FixedWindowRateLimiter limiter = new FixedWindowRateLimiter("login", 10, Duration.ofDays(1), 2, true, now::get);
+		assertThat(limiter.tryAcquire("a")).isTrue();
+		assertThat(limiter.tryAcquire("b")).isTrue();
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(limiter.tryAcquire("mallory")).isTrue();
+		}
+		assertThat(limiter.tryAcquire("mallory")).isFalse();
+		assertThat(limiter.tryAcquire("alice")).isTrue();
+		assertThat(limiter.trackedKeys()).isEqualTo(2);
+
+		now.addAndGet(Duration.ofDays(1).toNanos());
+		assertThat(limiter.tryAcquire("mallory")).isTrue();
+	}
+
+	@Test
+	void rejectsABatchLargerThanTheRemainingPermits() {
+		FixedWindowRateLimiter limiter = limiter(10);
+		assertThat(limiter.tryAcquire("alice", 3)).isTrue();
+		assertThat(limiter.tryAcquire("alice", 2)).isFalse();
+		assertThat(limiter.tryAcquire("alice", 1)).isTrue();
+	}
+}
@@ -0,0 +1,99 @@
+package com.email.email.writer.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+class JdbcRateLimitStoreTests {
+
+	private final AtomicLong now = new AtomicLong(1_000_000);
+
+	private JdbcTemplate jdbcTemplate;
+	private DataSourceTransactionManager transactionManager;
+
+	@BeforeEach
+	void setUp() {
+		DataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:ratelimit" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+	}
+
+	// One store per simulated replica, all sharing the same database
+	private JdbcRateLimitStore node(int leasePermits) {
+		JdbcRateLimitStore store = new JdbcRateLimitStore("emailApi", 4, Duration.ofMinutes(1), leasePermits, 100, false,
+				jdbcTemplate, transactionManager, now::get);
+		store.createTableIfMissing();
+		return store;
+	}
+
+	@Test
+	void replicasShareOneBudget() {
+		JdbcRateLimitStore first = node(1);
+		JdbcRateLimitStore second = node(1);
+
+		assertThat(first.tryAcquire("alice")).isTrue();
+		assertThat(second.tryAcquire("alice")).isTrue();
+		assertThat(first.tryAcquire("alice")).isTrue();
+		assertThat(second.tryAcquire("alice")).isTrue();
+		assertThat(first.tryAcquire("alice")).isFalse();
+		assertThat(second.tryAcquire("alice")).isFalse();
+		assertThat(second.tryAcquire("bob")).isTrue();
+
+		now.addAndGet(Duration.ofMinutes(1).toMillis());
+		assertThat(second.tryAcquire("alice")).isTrue();
+	}
+
+	@Test
+	void leasedPermitsAndRejectionsAreServedLocally() {
+		JdbcRateLimitStore store = node(2);
+
+		assertThat(store.tryAcquire("alice")).isTrue();
+		assertThat(store.tryAcquire("alice")).isTrue();
+		assertThat(store.roundTrips()).isEqualTo(1);
+
+		assertThat(store.tryAcquire("alice")).isTrue();
+		assertThat(store.tryAcquire("alice")).isTrue();
+		assertThat(store.roundTrips()).isEqualTo(2);
+
+		// The window is used up: one trip learns that, later rejections stay local
+		assertThat(store.tryAcquire("alice")).isFalse();
+		assertThat(store.tryAcquire("alice")).isFalse();
+		assertThat(store.roundTrips()).isEqualTo(3);
+	}
+
+	@Test
+	void capsTheLeaseAtHalfTheLimit() {
+		JdbcRateLimitStore first = node(10);
+		JdbcRateLimitStore second = node(10);
+
+		assertThat(first.tryAcquire("alice")).isTrue();
+		// first holds one unspent permit, the other two are still in the database
+		assertThat(second.tryAcquire("alice")).isTrue();
+		assertThat(second.tryAcquire("alice")).isTrue();
+		assertThat(second.tryAcquire("alice")).isFalse();
+		assertThat(first.tryAcquire("alice")).isTrue();
+		assertThat(first.tryAcquire("alice")).isFalse();
+	}
+
+	@Test
+	void fallsBackToPerNodeLimitsWhenTheDatabaseFails() {
+		JdbcRateLimitStore store = node(1);
+		jdbcTemplate.execute("DROP TABLE " + JdbcRateLimitStore.TABLE);
+
+		for (int i = 0; i < 4; i++) {
+			assertThat(store.tryAcquire("alice")).isTrue();
+		}
+		assertThat(store.tryAcquire("alice")).isFalse();
+		assertThat(store.fallbacks()).isEqualTo(5);
+	}
+}
@@ -0,0 +1,150 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.email.email.writer.masking.PiiScanner;
+
+class DataMaskingServiceTests {
+
+	// The alternation regex the scanner replaced, kept here as the reference behaviour
+	private static final Pattern LEGACY_PATTERN = Pattern.compile(
+			"(?<EMAIL>[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,})|" +
+			"(?<CARD>\\b(?:\\d[ -]*?){13,16}\\b)|" +
+			"(?<AADHAR>\\b\\d{12}\\b)|" +
+			"(?<PAN>[A-Z]{5}[0-9]{4}[A-Z]{1})|" +
+			"(?<PASSWORD>(?i)(password\\s*[:=]\\s*\\S+))|" +
+			"(?<DOB>\\b\\d{2}[-/\\.]\\d{2}[-/\\.]\\d{4}\\b)|" +
+			"(?<PHONE>\\b\\+?91[- ]?[6-9]\\d{9}\\b|\\b[6-9]\\d{9}\\b)");
+
+	private final DataMaskingService maskingService = new DataMaskingService();
+
+	@Test
+	void masksWhatTheLegacyPatternFoundOnTypicalEmails() {
+		String[] samples = {
+				"Please send documents to testperson@example.com. My Aadhaar number is 123456789012.",
+				"Card 4111 1111 1111 1111, PAN ABCDE1234F, born 01/02/1990, call +91 9876543210.",
+				"password: hunter2\nPassword=secret and 9876543210 or 919876543210",
+				"1234 5678 9012 3 456 and 1234-5678-9012-3456-7890",
+				"No sensitive data in this one at all."
+		};
+		for (String sample : samples) {
+			assertThat(maskingService.mask(sample).maskedText()).isEqualTo(legacyMask(sample));
+		}
+	}
+
+	@Test
+	void masksWhatTheLegacyPatternFoundOnGeneratedInput() {
+		String[] atoms = { "0", "1", "5", "6", "9", "9", "1", " ", "-", "/", ".", "@", "a", "Z", "A", "_", "%", "+",
+				"\n", ":", "=", "password", "PassWord", "91", "+91", "com", "x.co", "@gmail.com", "ABCDE", "1234", "98765" };
+		Random random = new Random(42);
+		for (int run = 0; run < 20_000; run++) {
+			StringBuilder text = new StringBuilder();
+			int parts = 1 + random.nextInt(40);
+			for (int i = 0; i < parts; i++) {
+				text.append(atoms[random.nextInt(atoms.length)]);
+			}
+			String input = text.toString();
+			assertThat(maskingService.mask(input).maskedText()).as(input).isEqualTo(legacyMask(input));
+		}
+	}
+
+	@Test
+	void staysLinearOnPathologicalInput() {
+		String[] inputs = { "1".repeat(50_000), "1 ".repeat(25_000), "a".repeat(25_000) + "@" + "b".repeat(25_000) };
+		for (String input : inputs) {
+			assertTimeoutPreemptively(Duration.ofSeconds(1), () -> maskingService.mask(input));
+		}
+	}
+
+	@Test
+	void givesDistinctValuesDistinctPlaceholders() {
+		MaskedData masked = maskingService.mask("Call 9876541234 or 8123451234, not 9876541234.");
+
+		assertThat(masked.maskedText()).isEqualTo("Call [PHONE_1] or [PHONE_2], not [PHONE_1].");
+		assertThat(maskingService.unmask("Try [PHONE_2] first, then [PHONE_1].", masked.replacements()))
+				.isEqualTo("Try 8123451234 first, then 9876541234.");
+	}
+
+	@Test
+	void leavesUnknownPlaceholdersAlone() {
+		MaskedData masked = maskingService.mask("Mail me at john.doe@gmail.com");
+
+		assertThat(maskingService.unmask("[EMAIL_1] [EMAIL_2] [PHONE_1] [EMAIL_01] [EMAIL_1", masked.replacements()))
+				.isEqualTo("john.doe@gmail.com [EMAIL_2] [PHONE_1] [EMAIL_01] [EMAIL_1");
+	}
+
+	@Test
+	void restoresPlaceholdersSplitAcrossStreamedChunks() {
+		MaskedData masked = maskingService.mask("Mail me at john.doe@gmail.com");
+		StreamingUnmasker unmasker = maskingService.streamingUnmasker(masked.replacements());
+
+		String streamed = unmasker.feed("Write to [EM") + unmasker.feed("AIL_") + unmasker.feed("1] or [x")
+				+ unmasker.flush();
+		assertThat(streamed).isEqualTo("Write to john.doe@gmail.com or [x");
+	}
+
+	@Test
+	void restoresOriginalValues() {
+		String original = "Reach me at john.doe@gmail.com or 9876543210.";
+		MaskedData masked = maskingService.mask(original);
+
+		assertThat(masked.maskedText()).doesNotContain("john.doe@gmail.com", "9876543210");
+		assertThat(maskingService.unmask(masked.maskedText(), masked.replacements())).isEqualTo(original);
+	}
+
+	@Test
+	void masksChunkedTextExactlyLikeOneScan() {
+		// Tiny chunks, so values regularly run across chunk ends, including passwords across line breaks
+		DataMaskingService chunked = new DataMaskingService(PiiScanner.builtInDetectors(), 1, 7, 3);
+		String[] atoms = { "john.doe@gmail.com", "4111 1111 1111 1111", "123456789012", "ABCDE1234F",
+				"password:\n hunter2", "Password = x", "01/02/1990", "+91 9876543210", "9123456789",
+				" ", "  ", "\n", "\n\n", "-", "a", "meeting", "1234", "98765" };
+		Random random = new Random(7);
+		try {
+			for (int run = 0; run < 2_000; run++) {
+				StringBuilder text = new StringBuilder();
+				int parts = 1 + random.nextInt(60);
+				for (int i = 0; i < parts; i++) {
+					text.append(atoms[random.nextInt(atoms.length)]);
+				}
+				String input = text.toString();
+				MaskedData expected = maskingService.mask(input);
+				MaskedData actual = chunked.mask(input);
+				assertThat(actual.maskedText()).as(input).isEqualTo(expected.maskedText());
+				assertThat(chunked.unmask(actual.maskedText(), actual.replacements())).isEqualTo(input);
+			}
+		}
+		finally {
+			chunked.close();
+		}
+	}
+
+	// Legacy matches, written with the placeholder scheme: one number per distinct value
+	private static String legacyMask(String text) {
+		Matcher matcher = LEGACY_PATTERN.matcher(text);
+		Map<String, String> placeholders = new HashMap<>();
+		StringBuilder sb = new StringBuilder();
+		while (matcher.find()) {
+			String value = matcher.group();
+			String type = Stream.of("EMAIL", "CARD", "AADHAR", "PAN", "PASSWORD", "DOB", "PHONE")
+					.filter(name -> matcher.group(name) != null)
+					.findFirst().orElseThrow();
+			String placeholder = placeholders.computeIfAbsent(value,
+					v -> "[" + type + "_" + (placeholders.size() + 1) + "]");
+			matcher.appendReplacement(sb, Matcher.quoteReplacement(placeholder));
+		}
+		matcher.appendTail(sb);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,128 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.email.email.writer.llm.AdaptiveConcurrencyLimiter;
+import com.email.email.writer.llm.LlmCallPolicy;
+import com.email.email.writer.llm.LlmClient;
+import com.email.email.writer.llm.LlmResponse;
+import com.email.email.writer.model.EmailRequest;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class EmailGeneratorServiceTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final AtomicInteger llmCalls = new AtomicInteger();
+	private volatile Mono<LlmResponse> llmAnswer = Mono.never();
+	private AdaptiveConcurrencyLimiter limiter;
+	private EmailGeneratorService service;
+
+	@BeforeEach
+	void setUp() {
+		// One LLM slot, so the second call has to queue
+		limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1.5, 5, Duration.ofSeconds(10), 5, Duration.ofSeconds(10),
+				4, 1, 1000, meterRegistry);
+		LlmCallPolicy policy = new LlmCallPolicy(CircuitBreakerRegistry.ofDefaults(), limiter, 0.95, 100, meterRegistry);
+		ReflectionTestUtils.setField(policy, "deadline", Duration.ofSeconds(10));
+		ReflectionTestUtils.setField(policy, "hedgingEnabled", false);
+		ReflectionTestUtils.setField(policy, "initialHedgeDelay", Duration.ofSeconds(5));
+		ReflectionTestUtils.setField(policy, "minHedgeDelay", Duration.ofMillis(250));
+		LlmClient client = new LlmClient() {
+			@Override
+			public String name() {
+				return "test";
+			}
+
+			@Override
+			public Mono<LlmResponse> generate(String prompt) {
+				llmCalls.incrementAndGet();
+				return llmAnswer;
+			}
+
+			@Override
+			public Flux<String> stream(String prompt) {
+				return Flux.never();
+			}
+		};
+		service = new EmailGeneratorService(client, policy, new DataMaskingService(),
+				new PromptBuilder(4000, 4, List.of("formal"), meterRegistry),
+				new ReplyCache(100, DataSize.ofMegabytes(1), Duration.ofMinutes(1), meterRegistry),
+				new ReplyCoalescer(meterRegistry),
+				new SimilarReplyIndex(false, 0, 3, Duration.ofMinutes(1), 0, meterRegistry),
+				mock(GenerationHistoryWriter.class), meterRegistry);
+		ReflectionTestUtils.setField(service, "replyCacheEnabled", true);
+		ReflectionTestUtils.setField(service, "coalescingEnabled", true);
+		ReflectionTestUtils.setField(service, "batchConcurrency", 4);
+	}
+
+	@Test
+	void cancelledBatchItemLeavesTheLlmQueue() throws InterruptedException {
+		Disposable running = service.generateEmailReply(email("Can we meet on Monday?"), "alice").subscribe();
+		awaitUntil(() -> limiter.getInFlight() == 1);
+
+		Disposable batch = service.generateBatch(List.of(email("Please resend the invoice.")), true, "bob").subscribe();
+		awaitUntil(() -> limiter.getQueued() == 1);
+
+		// The client of the batch went away; its coalesced call must not keep a place in the queue
+		batch.dispose();
+		awaitUntil(() -> limiter.getQueued() == 0);
+		assertThat(meterRegistry.get("llm.scheduling.queue.wait").tags("class", "batch", "outcome", "cancelled")
+				.timer().count()).isEqualTo(1);
+
+		running.dispose();
+		awaitUntil(() -> limiter.getInFlight() == 0);
+		assertThat(llmCalls.get()).isEqualTo(1);
+	}
+
+	@Test
+	void bypassCacheAsksTheLlmAndLeavesTheCachedReplyAlone() {
+		llmAnswer = answer("Monday works for me.");
+		assertThat(service.generateEmailReply(email("Can we meet on Monday?"), "alice").block()).isEqualTo("Monday works for me.");
+		assertThat(service.generateEmailReply(email("Can we meet on Monday?"), "alice").block()).isEqualTo("Monday works for me.");
+		assertThat(llmCalls.get()).isEqualTo(1);
+
+		llmAnswer = answer("Tuesday would suit me better.");
+		EmailRequest bypass = email("Can we meet on Monday?");
+		bypass.setBypassCache(true);
+		assertThat(service.generateEmailReply(bypass, "alice").block()).isEqualTo("Tuesday would suit me better.");
+		assertThat(llmCalls.get()).isEqualTo(2);
+
+		assertThat(service.generateEmailReply(email("Can we meet on Monday?"), "alice").block()).isEqualTo("Monday works for me.");
+		assertThat(llmCalls.get()).isEqualTo(2);
+	}
+
+	private static Mono<LlmResponse> answer(String text) {
+		return Mono.just(new LlmResponse(text, null, null, LlmResponse.Usage.NONE));
+	}
+
+	private static EmailRequest email(String content) {
+		EmailRequest request = new EmailRequest();
+		request.setContent(content);
+		request.setTone("formal");
+		return request;
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionDefinition;
+
+import com.email.email.writer.model.GenerationHistory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class GenerationHistoryWriterTests {
+
+	private DataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private SimpleMeterRegistry meterRegistry;
+	private GenerationHistoryWriter writer;
+
+	@BeforeEach
+	void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:history" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE SEQUENCE generation_history_id_seq");
+		jdbcTemplate.execute("CREATE TABLE generation_history (id BIGINT PRIMARY KEY, username VARCHAR(255) NOT NULL,"
+				+ " source VARCHAR(16) NOT NULL, tone VARCHAR(255), input_chars INT NOT NULL, output_chars INT NOT NULL,"
+				+ " latency_ms BIGINT NOT NULL, prompt_tokens INT NOT NULL, output_tokens INT NOT NULL,"
+				+ " cached BOOLEAN NOT NULL, masked_input TEXT, masked_output TEXT, created_at TIMESTAMP NOT NULL)");
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	private GenerationHistoryWriter writer(int queueCapacity, int batchSize, Duration flushInterval) {
+		return new GenerationHistoryWriter(jdbcTemplate, new DataSourceTransactionManager(dataSource), true,
+				queueCapacity, batchSize, flushInterval, 10, Duration.ofSeconds(5), meterRegistry);
+	}
+
+	private static GenerationHistory entry(String username) {
+		GenerationHistory entry = new GenerationHistory();
+		entry.setUsername(username);
+		entry.setSource("generate");
+		entry.setTone("formal");
+		entry.setInputChars(12);
+		entry.setOutputChars(34);
+		entry.setLatencyMs(56);
+		entry.setPromptTokens(7);
+		entry.setOutputTokens(8);
+		entry.setMaskedInput("Hi [EMAIL_1], how are you doing?");
+		entry.setMaskedOutput("Fine");
+		entry.setCreatedAt(Instant.now());
+		return entry;
+	}
+
+	private int rows() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM generation_history", Integer.class);
+	}
+
+	private void awaitRows(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (rows() < expected && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void writesAFullBatchWithoutWaitingForTheInterval() throws Exception {
+		writer = writer(100, 3, Duration.ofHours(1));
+
+		writer.record(entry("alice"));
+		writer.record(entry("alice"));
+		Thread.sleep(200);
+		assertThat(rows()).isZero();
+
+		writer.record(entry("bob"));
+		awaitRows(3);
+
+		assertThat(rows()).isEqualTo(3);
+		assertThat(jdbcTemplate.queryForObject("SELECT masked_input FROM generation_history WHERE username = 'bob'",
+				String.class)).isEqualTo("Hi [EMAIL_");
+		assertThat(meterRegistry.get("history.written").counter().count()).isEqualTo(3);
+		assertThat(meterRegistry.get("history.flush").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void writesAPartialBatchOnceTheIntervalHasPassed() throws Exception {
+		writer = writer(100, 50, Duration.ofMillis(100));
+
+		writer.record(entry("alice"));
+		awaitRows(1);
+
+		assertThat(rows()).isEqualTo(1);
+	}
+
+	@Test
+	void dropsEntriesWhenTheQueueIsFull() throws Exception {
+		// The first flush waits on the latch, so nothing leaves the queue meanwhile
+		CountDownLatch databaseSlow = new CountDownLatch(1);
+		DataSourceTransactionManager slowTransactions = new DataSourceTransactionManager(dataSource) {
+			@Override
+			protected void doBegin(Object transaction, TransactionDefinition definition) {
+				try {
+					databaseSlow.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.doBegin(transaction, definition);
+			}
+		};
+		writer = new GenerationHistoryWriter(jdbcTemplate, slowTransactions, true, 2, 1, Duration.ofHours(1), 10,
+				Duration.ofSeconds(5), meterRegistry);
+
+		writer.record(entry("first"));
+		while (writer.queued() > 0) {
+			Thread.sleep(5);
+		}
+		for (int i = 0; i < 4; i++) {
+			writer.record(entry("alice"));
+		}
+		assertThat(meterRegistry.get("history.dropped").tag("reason", "full").counter().count()).isEqualTo(2);
+
+		databaseSlow.countDown();
+		writer.close();
+		assertThat(rows()).isEqualTo(3);
+	}
+
+	@Test
+	void closeWritesWhatIsStillQueued() {
+		writer = writer(1000, 500, Duration.ofHours(1));
+		for (int i = 0; i < 120; i++) {
+			writer.record(entry("user" + (i % 4)));
+		}
+
+		writer.close();
+
+		assertThat(rows()).isEqualTo(120);
+		writer.record(entry("late"));
+		assertThat(meterRegistry.get("history.dropped").tag("reason", "closed").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void keepsRunningWhenABatchFails() throws Exception {
+		writer = writer(100, 1, Duration.ofHours(1));
+		GenerationHistory broken = entry("alice");
+		broken.setSource("far-too-long-for-the-column");
+
+		writer.record(broken);
+		writer.record(entry("bob"));
+		awaitRows(1);
+
+		assertThat(jdbcTemplate.queryForList("SELECT username FROM generation_history", String.class))
+				.containsExactly("bob");
+		assertThat(meterRegistry.get("history.dropped").tag("reason", "error").counter().count()).isEqualTo(1);
+	}
+}
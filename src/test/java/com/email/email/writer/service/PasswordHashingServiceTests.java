@@ -0,0 +1,66 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PasswordHashingServiceTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private PasswordHashingService service;
+
+	@AfterEach
+	void tearDown() {
+		service.close();
+	}
+
+	@Test
+	void hashesOnThePoolAndRehashesWhenTheCostChanges() {
+		service = new PasswordHashingService(5, 1, 4, Duration.ofSeconds(5), meterRegistry);
+
+		String hash = service.encode("password123");
+		assertThat(PasswordHashingService.storedStrength(hash)).isEqualTo(5);
+		assertThat(service.matches("password123", hash)).isTrue();
+		assertThat(service.matches("wrong", hash)).isFalse();
+		assertThat(service.upgradeEncoding(hash)).isFalse();
+		assertThat(service.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password123"))).isTrue();
+		assertThat(service.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password123"))).isTrue();
+		assertThat(meterRegistry.get("auth.password.hash").tag("operation", "matches").timer().count()).isEqualTo(2);
+	}
+
+	@Test
+	void rejectsAtOnceWhenThePoolAndQueueAreFull() throws Exception {
+		// Cost 14 keeps the single thread busy for a good while
+		service = new PasswordHashingService(14, 1, 1, Duration.ofSeconds(30), meterRegistry);
+
+		CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> service.encode("first"));
+		awaitUntil(() -> service.active() == 1);
+		CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> service.encode("second"));
+		awaitUntil(() -> service.queued() == 1);
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> service.encode("third")).isInstanceOf(PasswordHashingOverloadedException.class);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+		assertThat(meterRegistry.get("auth.password.rejected").counter().count()).isEqualTo(1);
+
+		running.cancel(true);
+		queued.cancel(true);
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PrincipalCacheTests {
+
+	private final AtomicLong now = new AtomicLong();
+	private final List<String> loads = new ArrayList<>();
+	private final Function<String, UserDetails> loader = username -> {
+		loads.add(username);
+		return User.withUsername(username).password("hash").roles("USER").build();
+	};
+
+	private PrincipalCache cache(int maxEntries) {
+		return new PrincipalCache(maxEntries, Duration.ofSeconds(60), new SimpleMeterRegistry(), now::get);
+	}
+
+	@Test
+	void servesACopyWithoutThePasswordUntilTheTtlPasses() {
+		PrincipalCache cache = cache(10);
+		assertThat(cache.get("alice", loader).getPassword()).isEmpty();
+
+		now.addAndGet(Duration.ofSeconds(59).toNanos());
+		cache.get("alice", loader);
+		assertThat(loads).containsExactly("alice");
+
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		cache.get("alice", loader);
+		assertThat(loads).containsExactly("alice", "alice");
+	}
+
+	@Test
+	void stopsCachingNewUsersWhenFullUntilExpiredOnesAreSwept() {
+		PrincipalCache cache = cache(2);
+		cache.get("alice", loader);
+		cache.get("bob", loader);
+
+		// Full: carol is loaded every time, the cached users are still served
+		cache.get("carol", loader);
+		cache.get("carol", loader);
+		cache.get("alice", loader);
+		assertThat(loads).containsExactly("alice", "bob", "carol", "carol");
+
+		now.addAndGet(Duration.ofSeconds(60).toNanos());
+		cache.get("carol", loader);
+		cache.get("carol", loader);
+		assertThat(loads).containsExactly("alice", "bob", "carol", "carol", "carol");
+	}
+
+	@Test
+	void invalidateForgetsTheUser() {
+		PrincipalCache cache = cache(10);
+		cache.get("alice", loader);
+
+		cache.invalidate("alice");
+		cache.get("alice", loader);
+
+		assertThat(loads).containsExactly("alice", "alice");
+	}
+}
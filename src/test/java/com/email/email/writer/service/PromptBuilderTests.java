@@ -0,0 +1,151 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PromptBuilderTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final PromptBuilder promptBuilder = new PromptBuilder(50, 4, List.of("formal"), meterRegistry);
+	private final DataMaskingService maskingService = new DataMaskingService();
+
+	@Test
+	void dropsQuotedHistorySignatureAndFooter() {
+		String email = """
+				Hi Ravi,
+
+				Can we move the review to Friday?
+				> Sure, Thursday works.
+				> Thanks
+
+				Thanks,
+				Priya
+				--
+				Priya Sharma | Finance
+				""";
+		String gmailThread = """
+				Sounds good, see you then.
+
+				On Mon, 6 May 2024 at 10:02, Jane Doe <jane@example.com>
+				wrote:
+				> Lunch at noon?
+				""";
+		String outlookThread = """
+				Attached is the invoice.
+
+				Sent from my iPhone
+
+				From: Jane Doe <jane@example.com>
+				Sent: Monday, May 6, 2024 10:02 AM
+				To: Ravi
+				Subject: Invoice
+				Please send the invoice.
+				""";
+		String footer = """
+				Please confirm by Monday.
+
+				CONFIDENTIALITY NOTICE: This email and any attachments are confidential.
+				""";
+
+		assertThat(promptBuilder.prepare(email)).isEqualTo("Hi Ravi,\n\nCan we move the review to Friday?\n\nThanks,\nPriya");
+		assertThat(promptBuilder.prepare(gmailThread)).isEqualTo("Sounds good, see you then.");
+		assertThat(promptBuilder.prepare(outlookThread)).isEqualTo("Attached is the invoice.");
+		assertThat(promptBuilder.prepare(footer)).isEqualTo("Please confirm by Monday.");
+		assertThat(prepareAndMask(email).maskedText()).isEqualTo(promptBuilder.prepare(email));
+		assertThat(meterRegistry.get("email.prompt.saved.size").summary().totalAmount()).isPositive();
+	}
+
+	@Test
+	void keepsParagraphsThatOnlyStartLikeAFooter() {
+		String confidentially = "Hi Ravi,\n\nConfidentially, I think we should renegotiate the contract.\n\nThanks,\nPriya";
+		String notice = "Hi all,\n\nImportant notice: the office is closed on Friday.";
+		String disclaimers = "Hi Ravi,\n\nDisclaimers in our supplier contracts need a review.\n\nCan you check them by Monday?";
+		String capitalsMidEmail = "Hi all,\n\nIMPORTANT NOTICE: the office is closed on Friday.\n\nPlease plan your deliveries around it.";
+
+		assertThat(promptBuilder.prepare(confidentially)).isEqualTo(confidentially);
+		assertThat(promptBuilder.prepare(notice)).isEqualTo(notice);
+		assertThat(promptBuilder.prepare(disclaimers)).isEqualTo(disclaimers);
+		assertThat(promptBuilder.prepare(capitalsMidEmail)).isEqualTo(capitalsMidEmail);
+	}
+
+	@Test
+	void dropsATrailingFooterInLegalWordingBeforeTheHistory() {
+		String email = """
+				Please find the signed copy attached.
+
+				Disclaimer: this message is intended only for the named recipient.
+
+				From: Jane Doe <jane@example.com>
+				Sent: Monday, May 6, 2024 10:02 AM
+				Please send the signed copy.
+				""";
+
+		assertThat(promptBuilder.prepare(email)).isEqualTo("Please find the signed copy attached.");
+	}
+
+	@Test
+	void keepsEmailsThatAreOnlyHistoryOrHeaders() {
+		String onlyQuoted = "> Are you coming tomorrow?\n> Let me know";
+		String pastedWithHeader = "From: Jane <jane@example.com>\nSent: Monday\n\nAre you coming tomorrow?";
+
+		assertThat(promptBuilder.prepare(onlyQuoted)).isEqualTo(onlyQuoted);
+		assertThat(promptBuilder.prepare(pastedWithHeader)).isEqualTo(pastedWithHeader);
+	}
+
+	@Test
+	void cutsLongEmailsToTheBudgetAtWordBoundaries() {
+		String email = "Dear team, " + "the quarterly report is attached for review. ".repeat(20) + "Please reply by Friday.";
+
+		String prepared = prepareAndMask(email).maskedText();
+
+		assertThat(prepared.length()).isLessThanOrEqualTo(200);
+		assertThat(prepared).startsWith("Dear team, ").contains(PromptBuilder.TRUNCATION_MARKER).endsWith("by Friday.");
+		assertThat(prepared.split(Pattern.quote(PromptBuilder.TRUNCATION_MARKER)))
+				.allSatisfy(part -> assertThat(email).contains(part));
+		assertThat(meterRegistry.get("email.prompt.truncated").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void cutsTheMaskedTextSoNoValueIsSplit() {
+		// The cut at 150 characters falls inside the space-separated card number
+		String email = "Hello, " + "x".repeat(120) + " my card 4111 1111 1111 1111 was charged twice. "
+				+ "Please refund it to the same card before the end of the month, and confirm by email.";
+
+		MaskedData masked = prepareAndMask(email);
+
+		assertThat(masked.maskedText()).contains(PromptBuilder.TRUNCATION_MARKER).doesNotContain("4111", "1111");
+		assertThat(masked.replacements().size()).isEqualTo(1);
+	}
+
+	@Test
+	void keepsPlaceholdersWholeWithoutWhitespaceNearTheCut() {
+		// The cut at 144 characters falls inside the placeholder that starts at 139
+		MaskedData masked = maskingService.mask("a".repeat(138) + ",9876543210," + "b".repeat(300));
+		String placeholder = masked.replacements().placeholder(0);
+
+		String fitted = promptBuilder.fitToBudget("", masked).maskedText();
+
+		String head = fitted.substring(0, fitted.indexOf(PromptBuilder.TRUNCATION_MARKER));
+		assertThat(head).isEqualTo("a".repeat(138) + ",");
+		assertThat(fitted).doesNotContain("[PHONE_").doesNotContain(placeholder.substring(1));
+	}
+
+	@Test
+	void buildsTheSamePromptForPrecompiledAndOtherTones() {
+		PromptBuilder withoutTemplates = new PromptBuilder(50, 4, List.of(), meterRegistry);
+
+		assertThat(promptBuilder.build("Hi [EMAIL_1]", "formal")).isEqualTo(withoutTemplates.build("Hi [EMAIL_1]", "formal"))
+				.contains(" Use a formal tone.").endsWith("\n Original email: \nHi [EMAIL_1]");
+		assertThat(promptBuilder.build("Hi", null)).doesNotContain("tone");
+	}
+
+	private MaskedData prepareAndMask(String email) {
+		return promptBuilder.fitToBudget(email, maskingService.mask(promptBuilder.prepare(email)));
+	}
+}
@@ -0,0 +1,86 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ReplyCacheTests {
+
+	// With a one-character key this weighs 300 bytes: 200 of overhead plus two bytes per char
+	private static final String REPLY = "x".repeat(49);
+
+	private final AtomicLong now = new AtomicLong();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private ReplyCache cache(int maxEntries, long maxBytes) {
+		return new ReplyCache(maxEntries, DataSize.ofBytes(maxBytes), Duration.ofMinutes(1), meterRegistry, now::get);
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntryWhenFull() {
+		ReplyCache cache = cache(2, 10_000);
+		cache.put("a", REPLY);
+		cache.put("b", REPLY);
+		assertThat(cache.get("a")).isEqualTo(REPLY);
+
+		cache.put("c", REPLY);
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a")).isEqualTo(REPLY);
+		assertThat(cache.get("c")).isEqualTo(REPLY);
+		assertThat(meterRegistry.get("email.reply.cache.evictions").functionCounter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void keepsTheApproximateSizeWithinTheLimit() {
+		ReplyCache cache = cache(100, 1000);
+		cache.put("a", REPLY);
+		cache.put("b", REPLY);
+		cache.put("c", REPLY);
+		assertThat(cache.usedBytes()).isEqualTo(900);
+
+		cache.put("d", REPLY);
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.usedBytes()).isEqualTo(900);
+
+		// Replacing an entry swaps its weight, and a reply larger than the whole cache is not stored
+		cache.put("d", REPLY + REPLY);
+		assertThat(cache.usedBytes()).isEqualTo(998);
+		cache.put("e", "x".repeat(500));
+		assertThat(cache.get("e")).isNull();
+		assertThat(cache.size()).isEqualTo(3);
+	}
+
+	@Test
+	void expiresEntriesAfterTheTtl() {
+		ReplyCache cache = cache(100, 10_000);
+		cache.put("a", REPLY);
+
+		now.addAndGet(Duration.ofSeconds(59).toNanos());
+		assertThat(cache.get("a")).isEqualTo(REPLY);
+
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.size()).isZero();
+		assertThat(cache.usedBytes()).isZero();
+		assertThat(meterRegistry.get("email.reply.cache.hits").functionCounter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("email.reply.cache.misses").functionCounter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void keysDependOnToneAndTemplateVersion() {
+		String key = ReplyCache.key("Can we meet on Monday?", "formal", 1);
+
+		assertThat(ReplyCache.key("Can we meet on Monday?", "formal", 1)).isEqualTo(key);
+		assertThat(ReplyCache.key("Can we meet on Monday?", "casual", 1)).isNotEqualTo(key);
+		assertThat(ReplyCache.key("Can we meet on Monday?", "formal", 2)).isNotEqualTo(key);
+	}
+}
@@ -0,0 +1,72 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class ReplyCoalescerTests {
+
+	private final ReplyCoalescer coalescer = new ReplyCoalescer(new SimpleMeterRegistry());
+
+	@Test
+	void concurrentIdenticalRequestsShareOneCall() {
+		AtomicInteger calls = new AtomicInteger();
+		Sinks.One<String> reply = Sinks.one();
+
+		Mono<String> first = coalescer.coalesce("key", () -> {
+			calls.incrementAndGet();
+			return reply.asMono();
+		});
+		Mono<String> second = coalescer.coalesce("key", () -> {
+			calls.incrementAndGet();
+			return Mono.just("unexpected");
+		});
+
+		StepVerifier.create(Mono.zip(first, second, (a, b) -> a + "|" + b))
+				.then(() -> reply.tryEmitValue("masked reply"))
+				.expectNext("masked reply|masked reply")
+				.verifyComplete();
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(coalescer.leaders()).isEqualTo(1);
+		assertThat(coalescer.followers()).isEqualTo(1);
+	}
+
+	@Test
+	void finishedCallIsNotReused() {
+		AtomicInteger calls = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			String value = coalescer.coalesce("key", () -> Mono.fromCallable(() -> "reply " + calls.incrementAndGet()))
+					.block(Duration.ofSeconds(1));
+			assertThat(value).isEqualTo("reply " + (i + 1));
+		}
+		assertThat(coalescer.leaders()).isEqualTo(2);
+		assertThat(coalescer.followers()).isZero();
+	}
+
+	@Test
+	void sharedCallIsCancelledOnlyWhenTheLastSubscriberLeaves() {
+		AtomicBoolean cancelled = new AtomicBoolean();
+		Mono<String> upstream = Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+
+		Disposable first = coalescer.coalesce("key", () -> upstream).subscribe();
+		Disposable second = coalescer.coalesce("key", () -> upstream).subscribe();
+
+		first.dispose();
+		assertThat(cancelled).isFalse();
+		second.dispose();
+		assertThat(cancelled).isTrue();
+		assertThat(coalescer.leaders()).isEqualTo(1);
+		assertThat(coalescer.followers()).isEqualTo(1);
+	}
+}
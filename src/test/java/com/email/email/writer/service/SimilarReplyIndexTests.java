@@ -0,0 +1,110 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SimilarReplyIndexTests {
+
+	private static final String ORDER = "Hi Ravi, your order 48213 placed on 01/02/2024 has shipped to %s and will arrive"
+			+ " within five business days. Track it from your account or reply to this email with any questions.";
+
+	private final DataMaskingService maskingService = new DataMaskingService();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private SimilarReplyIndex index(int capacity) {
+		return new SimilarReplyIndex(true, capacity, 3, Duration.ofMinutes(10), 0.0, meterRegistry);
+	}
+
+	@Test
+	void reusesTheReplyOfANearlyIdenticalEmailWithItsOwnValues() {
+		SimilarReplyIndex index = index(100);
+		MaskedData first = maskingService.mask(ORDER.formatted("priya@gmail.com"));
+		// [DOB_1] is the order date
+		index.remember("priya", first.maskedText(), "formal", "Thanks, we will write to [EMAIL_2] once it arrives.");
+
+		MaskedData second = maskingService.mask(ORDER.replace("48213", "90775").formatted("arjun@yahoo.com"));
+		String reply = index.find("priya", second.maskedText(), "formal", second.replacements());
+
+		assertThat(reply).isNotNull();
+		assertThat(maskingService.unmask(reply, second.replacements()))
+				.isEqualTo("Thanks, we will write to arjun@yahoo.com once it arrives.");
+		assertThat(meterRegistry.get("email.similar-reply.lookups").tag("result", "hit").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void neverReusesAnotherUsersReply() {
+		SimilarReplyIndex index = index(100);
+		MaskedData first = maskingService.mask(ORDER.formatted("priya@gmail.com"));
+		index.remember("priya", first.maskedText(), "formal", "Thanks Ravi, order 48213 will reach [EMAIL_2] on Friday.");
+
+		MaskedData second = maskingService.mask(ORDER.formatted("arjun@yahoo.com"));
+
+		assertThat(index.find("arjun", second.maskedText(), "formal", second.replacements())).isNull();
+		assertThat(index.find("priya", second.maskedText(), "formal", second.replacements())).isNotNull();
+	}
+
+	@Test
+	void missesOtherTonesOtherEmailsAndShortOnes() {
+		SimilarReplyIndex index = index(100);
+		MaskedData order = maskingService.mask(ORDER.formatted("priya@gmail.com"));
+		index.remember("priya", order.maskedText(), "formal", "Thanks!");
+
+		MaskedData unrelated = maskingService.mask("Could we move tomorrow's budget review to Friday afternoon,"
+				+ " since half of the finance team is travelling on Thursday?");
+		MaskedData shortOne = maskingService.mask("Thanks, got it.");
+
+		assertThat(index.find("priya", order.maskedText(), "friendly", order.replacements())).isNull();
+		assertThat(index.find("priya", unrelated.maskedText(), "formal", unrelated.replacements())).isNull();
+		assertThat(index.find("priya", shortOne.maskedText(), "formal", shortOne.replacements())).isNull();
+		assertThat(meterRegistry.get("email.similar-reply.lookups").tag("result", "miss").counter().count()).isEqualTo(3);
+	}
+
+	@Test
+	void skipsRepliesWithPlaceholdersTheNewEmailLacks() {
+		SimilarReplyIndex index = index(100);
+		MaskedData first = maskingService.mask(ORDER.formatted("priya@gmail.com"));
+		index.remember("priya", first.maskedText(), "formal", "We will call [PHONE_3] or write to [EMAIL_2].");
+
+		MaskedData second = maskingService.mask(ORDER.formatted("arjun@yahoo.com"));
+
+		assertThat(index.find("priya", second.maskedText(), "formal", second.replacements())).isNull();
+		assertThat(meterRegistry.get("email.similar-reply.lookups").tag("result", "unresolved").counter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void overwritesTheOldestEntryWhenFull() {
+		SimilarReplyIndex index = index(2);
+		String[] emails = {
+				ORDER.formatted("priya@gmail.com"),
+				"Could we move tomorrow's budget review to Friday afternoon, since half of the finance team is away?",
+				"Please find attached the signed contract for the new office lease, and let me know if anything is missing."
+		};
+		for (int i = 0; i < emails.length; i++) {
+			index.remember("priya", maskingService.mask(emails[i]).maskedText(), "formal", "reply " + i);
+		}
+
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.memoryBytes()).isPositive();
+		MaskedData oldest = maskingService.mask(emails[0]);
+		assertThat(index.find("priya", oldest.maskedText(), "formal", oldest.replacements())).isNull();
+		for (int i = 1; i < emails.length; i++) {
+			MaskedData masked = maskingService.mask(emails[i]);
+			assertThat(index.find("priya", masked.maskedText(), "formal", masked.replacements())).isEqualTo("reply " + i);
+		}
+	}
+
+	@Test
+	void fingerprintIgnoresPiiValuesAndNumbers() {
+		String a = maskingService.mask(ORDER.formatted("priya@gmail.com")).maskedText();
+		String b = maskingService.mask(ORDER.replace("48213", "7").formatted("x.y@z.co")).maskedText();
+
+		assertThat(SimilarReplyIndex.fingerprint(a)).isEqualTo(SimilarReplyIndex.fingerprint(b)).isNotZero();
+		assertThat(SimilarReplyIndex.fingerprint("too short to index")).isZero();
+	}
+}
@@ -0,0 +1,53 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class StreamingUnmaskerTests {
+
+	private final DataMaskingService maskingService = new DataMaskingService();
+
+	private final MaskedData phone = maskingService.mask("Call 9876543210");
+
+	@Test
+	void holdsBackAPlaceholderSplitAcrossChunks() {
+		StreamingUnmasker unmasker = maskingService.streamingUnmasker(phone.replacements());
+
+		assertThat(unmasker.feed("Call [PHO")).isEqualTo("Call ");
+		assertThat(unmasker.feed("NE_")).isEmpty();
+		assertThat(unmasker.feed("1] today.")).isEqualTo("9876543210 today.");
+		assertThat(unmasker.flush()).isEmpty();
+	}
+
+	@Test
+	void releasesHeldTextThatTurnsOutNotToBeAPlaceholder() {
+		StreamingUnmasker unmasker = maskingService.streamingUnmasker(phone.replacements());
+
+		assertThat(unmasker.feed("Ref [PH")).isEqualTo("Ref ");
+		assertThat(unmasker.feed("-7]")).isEqualTo("[PH-7]");
+		assertThat(unmasker.feed(" [PHONE_")).isEqualTo(" ");
+		assertThat(unmasker.flush()).isEqualTo("[PHONE_");
+	}
+
+	@Test
+	void restoresTheSameTextWhereverTheReplyIsSplit() {
+		MaskedData masked = maskingService.mask("Call 9876543210 or write to priya@gmail.com about card 4111 1111 1111 1111.");
+		String reply = "Sure, I will call " + masked.maskedText() + " today.";
+		String expected = maskingService.unmask(reply, masked.replacements());
+
+		for (int split = 0; split <= reply.length(); split++) {
+			StreamingUnmasker unmasker = maskingService.streamingUnmasker(masked.replacements());
+			String streamed = unmasker.feed(reply.substring(0, split)) + unmasker.feed(reply.substring(split)) + unmasker.flush();
+			assertThat(streamed).as("split at %d", split).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void passesTextThroughWithoutReplacements() {
+		StreamingUnmasker unmasker = maskingService.streamingUnmasker(maskingService.mask("Hello").replacements());
+
+		assertThat(unmasker.feed("Hello [")).isEqualTo("Hello [");
+		assertThat(unmasker.flush()).isEmpty();
+	}
+}
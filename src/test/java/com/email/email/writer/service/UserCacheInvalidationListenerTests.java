@@ -0,0 +1,89 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.email.email.writer.model.User;
+import com.email.email.writer.repo.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Checks that Hibernate gets the listener from the Spring context, with the same PrincipalCache
+ * the rest of the application uses.
+ */
+@DataJpaTest
+class UserCacheInvalidationListenerTests {
+
+	@TestConfiguration
+	static class Cache {
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		PrincipalCache principalCache(MeterRegistry meterRegistry) {
+			return new PrincipalCache(100, Duration.ofMinutes(1), meterRegistry);
+		}
+	}
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private PrincipalCache principalCache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	void updatingAUserDropsTheCachedPrincipal() {
+		User user = save("carol");
+		principalCache.get("carol", loader());
+		principalCache.get("carol", loader());
+		assertThat(loads.get()).isEqualTo(1);
+
+		user.setPassword("new-hash");
+		userRepository.saveAndFlush(user);
+
+		principalCache.get("carol", loader());
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	void deletingAUserDropsTheCachedPrincipal() {
+		User user = save("dave");
+		principalCache.get("dave", loader());
+
+		userRepository.delete(user);
+		userRepository.flush();
+
+		principalCache.get("dave", loader());
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	private User save(String username) {
+		User user = new User(username, "hash");
+		user.setEmail(username + "@example.com");
+		return userRepository.saveAndFlush(user);
+	}
+
+	private Function<String, UserDetails> loader() {
+		return username -> {
+			loads.incrementAndGet();
+			return new User(username, "hash");
+		};
+	}
+}
@@ -0,0 +1,138 @@
+package com.email.email.writer.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.email.email.writer.dto.UserImportReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+
+class UserImportServiceTests {
+
+	private JdbcTemplate jdbcTemplate;
+	private PasswordHashingService passwordHashing;
+	private UserImportService importService;
+
+	@BeforeEach
+	void setUp() {
+		DataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:users" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE SEQUENCE users_id_seq");
+		jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(255) NOT NULL UNIQUE,"
+				+ " password VARCHAR(255) NOT NULL, email VARCHAR(255) NOT NULL UNIQUE)");
+		jdbcTemplate.update("INSERT INTO users VALUES (nextval('users_id_seq'), 'taken', 'x', 'taken@gmail.com')");
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		passwordHashing = new PasswordHashingService(4, 1, 1, Duration.ofSeconds(5), meterRegistry);
+		importService = new UserImportService(jdbcTemplate, new DataSourceTransactionManager(dataSource), passwordHashing,
+				Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), 2, 2, meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		passwordHashing.close();
+	}
+
+	@Test
+	void importsValidRowsAndReportsTheRest() throws Exception {
+		String csv = """
+				email,username,password
+				alice@gmail.com,alice,"pa,ss""word"
+				bob@yahoo.com,bob,secret1
+
+				x@gmail.com,taken,secret1
+				carol@outlook.com,carol,secret1
+				alice2@gmail.com,alice,secret1
+				dave@gmail.com,dave,123
+				erin@gmail.com,erin,secret1
+				""";
+
+		UserImportReport report = importService.importCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(report.getReceived()).isEqualTo(7);
+		assertThat(report.getImported()).isEqualTo(3);
+		assertThat(report.getFailed()).isEqualTo(4);
+		assertThat(report.getErrors()).extracting(UserImportReport.RowError::getRow, UserImportReport.RowError::getUsername)
+				.containsExactlyInAnyOrder(tuple(3, "taken"), tuple(4, "carol"), tuple(5, "alice"), tuple(6, "dave"));
+		assertThat(report.getRowsPerSecond()).isPositive();
+
+		String hash = jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = 'alice'", String.class);
+		assertThat(new BCryptPasswordEncoder().matches("pa,ss\"word", hash)).isTrue();
+		assertThat(jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class)).containsExactly(1L, 2L, 3L, 4L);
+	}
+
+	@Test
+	void readsJsonArraysAndStopsAtBrokenInput() throws Exception {
+		String json = """
+				[{"username":"frank","email":"frank@gmail.com","password":"secret1"},
+				 {"username":"gina","email":"taken@gmail.com","password":"secret1"},
+				 {"username":"hal","email":"hal@gmail.com","password":"secret1"}, {"username":
+				""";
+
+		UserImportReport report = importService.importJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(report.getImported()).isEqualTo(2);
+		assertThat(report.getErrors()).extracting(UserImportReport.RowError::getRow).containsExactly(2, 4);
+		assertThat(report.getErrors().get(0).getMessage()).isEqualTo("Email already exists");
+	}
+
+	@Test
+	void rejectsAJsonBodyThatIsNotAnArray() {
+		for (String json : new String[] { "{\"username\":\"frank\"}", "not json", "" }) {
+			assertThatIllegalArgumentException()
+					.isThrownBy(() -> importService.importJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))))
+					.withMessageStartingWith("The JSON body must be an array of users");
+		}
+	}
+
+	@Test
+	void namesTheColumnTakenBySomeoneWhoSignedUpDuringTheImport() throws Exception {
+		// Signups that land between the chunk's check and its insert
+		PasswordHashingService racingHashing = new PasswordHashingService(4, 1, 1, Duration.ofSeconds(5), new SimpleMeterRegistry()) {
+			@Override
+			String encodeOnCaller(CharSequence rawPassword) {
+				jdbcTemplate.update("MERGE INTO users (id, username, password, email) KEY (username)"
+						+ " VALUES (100, 'ivan', 'x', 'ivan.other@gmail.com')");
+				jdbcTemplate.update("MERGE INTO users (id, username, password, email) KEY (username)"
+						+ " VALUES (101, 'jo.other', 'x', 'jo@gmail.com')");
+				return super.encodeOnCaller(rawPassword);
+			}
+		};
+		UserImportService racingImport = new UserImportService(jdbcTemplate,
+				new DataSourceTransactionManager(jdbcTemplate.getDataSource()), racingHashing,
+				Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), 2, 2, new SimpleMeterRegistry());
+		String json = """
+				[{"username":"ivan","email":"ivan@gmail.com","password":"secret1"},
+				 {"username":"jo","email":"jo@gmail.com","password":"secret1"}]
+				""";
+
+		try {
+			UserImportReport report = racingImport.importJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+			assertThat(report.getImported()).isZero();
+			assertThat(report.getErrors()).extracting(UserImportReport.RowError::getRow, UserImportReport.RowError::getMessage)
+					.containsExactly(tuple(1, "Username already exists"), tuple(2, "Email already exists"));
+		}
+		finally {
+			racingHashing.close();
+		}
+	}
+}